@@ -0,0 +1,102 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.benchmarks;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.kaitoy.goslings.server.dao.ObjectDao;
+import com.github.kaitoy.goslings.server.dao.jgit.ObjectDaoImpl;
+import com.github.kaitoy.goslings.server.dao.jgit.RepositoryDaoImpl;
+import com.github.kaitoy.goslings.server.resource.Commit;
+import com.github.kaitoy.goslings.server.resource.Tree;
+
+/**
+ * Benchmarks of {@link ObjectDaoImpl}.
+ *
+ * @author Kaito Yamada
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ObjectDaoBenchmark {
+
+  private static final int NUM_TREES = 64;
+
+  /**
+   * The shape of the repository. See {@link RepositoryShape#valueOf(String)}.
+   */
+  @Param({"small", "medium", "large"})
+  public String shape;
+
+  private final ObjectDao objectDao = new ObjectDaoImpl();
+  private String token;
+  private String[] treeIds;
+  private String rootTreeId;
+
+  /**
+   * Prepare a repository.
+   *
+   * @throws IOException if an I/O error occurs.
+   */
+  @Setup
+  public void setUp() throws IOException {
+    token
+      = new RepositoryDaoImpl()
+          .getToken(SyntheticRepository.get(RepositoryShape.valueOf(shape)).toString());
+    Commit[] commits = objectDao.getCommits(token);
+    treeIds
+      = Arrays.stream(commits)
+          .limit(NUM_TREES)
+          .map(Commit::getTreeId)
+          .toArray(String[]::new);
+    rootTreeId = treeIds[0];
+  }
+
+  /**
+   * @return all commits.
+   */
+  @Benchmark
+  public Commit[] getCommits() {
+    return objectDao.getCommits(token);
+  }
+
+  /**
+   * @return the root trees of the latest commits.
+   */
+  @Benchmark
+  public Tree[] getTrees() {
+    return objectDao.getTrees(token, treeIds);
+  }
+
+  /**
+   * @return the contents of the root tree of the latest commit.
+   */
+  @Benchmark
+  public String getTreeContents() {
+    return objectDao.getContents(token, rootTreeId);
+  }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.kaitoy.goslings.server.dao.RepositoryDao;
+import com.github.kaitoy.goslings.server.dao.jgit.RepositoryDaoImpl;
+import com.github.kaitoy.goslings.server.resource.Index;
+
+/**
+ * Benchmarks of {@link RepositoryDaoImpl}.
+ *
+ * @author Kaito Yamada
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryDaoBenchmark {
+
+  /**
+   * The shape of the repository. See {@link RepositoryShape#valueOf(String)}.
+   */
+  @Param({"small", "medium", "large"})
+  public String shape;
+
+  private final RepositoryDao repositoryDao = new RepositoryDaoImpl();
+  private String token;
+
+  /**
+   * Prepare a repository.
+   *
+   * @throws IOException if an I/O error occurs.
+   */
+  @Setup
+  public void setUp() throws IOException {
+    token
+      = repositoryDao.getToken(SyntheticRepository.get(RepositoryShape.valueOf(shape)).toString());
+  }
+
+  /**
+   * @return the index.
+   */
+  @Benchmark
+  public Index getIndex() {
+    return repositoryDao.getIndex(token);
+  }
+
+  /**
+   * @return the contents of the index.
+   */
+  @Benchmark
+  public String getIndexContents() {
+    return repositoryDao.getIndexContents(token);
+  }
+
+}
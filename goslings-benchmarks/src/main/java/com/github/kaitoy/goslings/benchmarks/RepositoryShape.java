@@ -0,0 +1,152 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.benchmarks;
+
+/**
+ * The shape of a synthetic repository generated by {@link SyntheticRepository}.
+ *
+ * @author Kaito Yamada
+ */
+public final class RepositoryShape {
+
+  /**
+   * A tiny repository like ones made for Git tutorials.
+   */
+  public static final RepositoryShape SMALL = new RepositoryShape(100, 10, 1, 10, 2);
+
+  /**
+   * A repository of an ordinary project.
+   */
+  public static final RepositoryShape MEDIUM = new RepositoryShape(2000, 100, 3, 1000, 10);
+
+  /**
+   * A repository of a big project.
+   */
+  public static final RepositoryShape LARGE = new RepositoryShape(20000, 1000, 5, 20000, 50);
+
+  private final int commits;
+  private final int fanOut;
+  private final int depth;
+  private final int indexEntries;
+  private final int branches;
+
+  /**
+   * @param commits the number of commits.
+   * @param fanOut the number of files in each directory.
+   * @param depth the number of nested directories under the root directory.
+   * @param indexEntries the number of entries in the index.
+   * @param branches the number of branches.
+   */
+  public RepositoryShape(int commits, int fanOut, int depth, int indexEntries, int branches) {
+    if (commits <= 0 || fanOut <= 0 || depth < 0 || indexEntries < 0 || branches <= 0) {
+      throw new IllegalArgumentException(
+              new StringBuilder()
+                .append("Invalid shape. commits: ")
+                .append(commits)
+                .append(", fanOut: ")
+                .append(fanOut)
+                .append(", depth: ")
+                .append(depth)
+                .append(", indexEntries: ")
+                .append(indexEntries)
+                .append(", branches: ")
+                .append(branches)
+                .toString()
+            );
+    }
+    this.commits = commits;
+    this.fanOut = fanOut;
+    this.depth = depth;
+    this.indexEntries = indexEntries;
+    this.branches = branches;
+  }
+
+  /**
+   * Get a shape from a string, which is either the name of a preset (small, medium, or large)
+   * or the form of
+   * &lt;commits&gt;:&lt;fanOut&gt;:&lt;depth&gt;:&lt;indexEntries&gt;:&lt;branches&gt;
+   * (e.g. 1000:50:2:500:5).
+   *
+   * @param shape shape
+   * @return a shape. Never null.
+   */
+  public static RepositoryShape valueOf(String shape) {
+    switch (shape.toLowerCase()) {
+      case "small":
+        return SMALL;
+      case "medium":
+        return MEDIUM;
+      case "large":
+        return LARGE;
+      default:
+        String[] params = shape.split(":");
+        if (params.length != 5) {
+          throw new IllegalArgumentException("Invalid shape: " + shape);
+        }
+        return new RepositoryShape(
+                 Integer.parseInt(params[0]),
+                 Integer.parseInt(params[1]),
+                 Integer.parseInt(params[2]),
+                 Integer.parseInt(params[3]),
+                 Integer.parseInt(params[4])
+               );
+    }
+  }
+
+  /**
+   * @return the number of commits.
+   */
+  public int getCommits() {
+    return commits;
+  }
+
+  /**
+   * @return the number of files in each directory.
+   */
+  public int getFanOut() {
+    return fanOut;
+  }
+
+  /**
+   * @return the number of nested directories under the root directory.
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * @return the number of entries in the index.
+   */
+  public int getIndexEntries() {
+    return indexEntries;
+  }
+
+  /**
+   * @return the number of branches.
+   */
+  public int getBranches() {
+    return branches;
+  }
+
+  @Override
+  public String toString() {
+    return new StringBuilder()
+             .append(commits)
+             .append(":")
+             .append(fanOut)
+             .append(":")
+             .append(depth)
+             .append(":")
+             .append(indexEntries)
+             .append(":")
+             .append(branches)
+             .toString();
+  }
+
+}
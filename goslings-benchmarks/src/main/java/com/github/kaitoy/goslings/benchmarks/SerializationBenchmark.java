@@ -0,0 +1,141 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.kaitoy.goslings.server.dao.ObjectDao;
+import com.github.kaitoy.goslings.server.dao.RepositoryDao;
+import com.github.kaitoy.goslings.server.dao.jgit.ObjectDaoImpl;
+import com.github.kaitoy.goslings.server.dao.jgit.RepositoryDaoImpl;
+import com.github.kaitoy.goslings.server.resource.Commit;
+import com.github.kaitoy.goslings.server.resource.Index;
+import com.github.kaitoy.goslings.server.resource.ResourceModule;
+import com.github.kaitoy.goslings.server.resource.Tree;
+
+/**
+ * Benchmarks of the serialization of resources into JSON, which compare Jackson's reflective
+ * bean serialization with the serializers of {@link ResourceModule}.
+ * Run them with <code>-prof gc</code> to compare allocation rates too.
+ *
+ * @author Kaito Yamada
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+  private static final int NUM_TREES = 64;
+
+  /**
+   * The shape of the repository. See {@link RepositoryShape#valueOf(String)}.
+   */
+  @Param({"small", "medium", "large"})
+  public String shape;
+
+  /**
+   * The way to serialize resources. <code>bean</code> for Jackson's reflective bean
+   * serialization and <code>module</code> for the serializers of {@link ResourceModule}.
+   */
+  @Param({"bean", "module"})
+  public String serialization;
+
+  private final OutputStream out = new NullOutputStream();
+  private ObjectMapper mapper;
+  private Commit[] commits;
+  private Tree[] trees;
+  private Index index;
+
+  /**
+   * Load resources to serialize.
+   *
+   * @throws IOException if an I/O error occurs.
+   */
+  @Setup
+  public void setUp() throws IOException {
+    mapper = new ObjectMapper();
+    if (serialization.equals("module")) {
+      mapper.registerModule(new ResourceModule());
+    }
+    else if (!serialization.equals("bean")) {
+      throw new IllegalArgumentException("Unknown serialization: " + serialization);
+    }
+
+    RepositoryDao repositoryDao = new RepositoryDaoImpl();
+    ObjectDao objectDao = new ObjectDaoImpl();
+    String token
+      = repositoryDao.getToken(
+          SyntheticRepository.get(RepositoryShape.valueOf(shape)).toString()
+        );
+    commits = objectDao.getCommits(token);
+    trees
+      = objectDao.getTrees(
+          token,
+          Arrays.stream(commits)
+            .limit(NUM_TREES)
+            .map(Commit::getTreeId)
+            .toArray(String[]::new)
+        );
+    index = repositoryDao.getIndex(token);
+  }
+
+  /**
+   * @throws IOException if an I/O error occurs.
+   */
+  @Benchmark
+  public void writeCommits() throws IOException {
+    mapper.writeValue(out, commits);
+  }
+
+  /**
+   * @throws IOException if an I/O error occurs.
+   */
+  @Benchmark
+  public void writeTrees() throws IOException {
+    mapper.writeValue(out, trees);
+  }
+
+  /**
+   * @throws IOException if an I/O error occurs.
+   */
+  @Benchmark
+  public void writeIndex() throws IOException {
+    mapper.writeValue(out, index);
+  }
+
+  private static final class NullOutputStream extends OutputStream {
+
+    @Override
+    public void write(int b) {}
+
+    @Override
+    public void write(byte[] b, int off, int len) {}
+
+  }
+
+}
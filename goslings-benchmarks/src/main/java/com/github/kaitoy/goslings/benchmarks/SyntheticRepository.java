@@ -0,0 +1,224 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.util.FileUtils;
+
+/**
+ * A generator of repositories of a given {@link RepositoryShape}.
+ * The history is linear and each commit modifies one file. Each directory has
+ * {@link RepositoryShape#getFanOut()} files and, except the deepest one, a subdirectory.
+ * Branches point to commits evenly spaced in the history, and master points to the last one.
+ * The index has {@link RepositoryShape#getIndexEntries()} entries independent of the commits.
+ * Generated repositories are reused across runs since the generation takes a while.
+ *
+ * @author Kaito Yamada
+ */
+public final class SyntheticRepository {
+
+  /**
+   * The system property to specify the directory to generate repositories in.
+   */
+  public static final String WORK_DIR_PROP = "goslings.benchmarks.workDir";
+
+  private static final String SHAPE_FILE_NAME = "goslings-shape";
+  private static final String DIR_NAME = "dir";
+  private static final long BASE_TIME = 1500000000000L;
+  private static final PersonIdent AUTHOR
+    = new PersonIdent("Goslings", "goslings@example.com", BASE_TIME, 0);
+
+  private SyntheticRepository() { throw new AssertionError(); }
+
+  /**
+   * @return the directory to generate repositories in, which is specified by the system
+   *         property {@value #WORK_DIR_PROP}. Never null.
+   */
+  public static Path getWorkDir() {
+    String workDir = System.getProperty(WORK_DIR_PROP);
+    if (workDir != null && !workDir.isEmpty()) {
+      return Paths.get(workDir);
+    }
+    return Paths.get(System.getProperty("java.io.tmpdir"), "goslings-benchmarks");
+  }
+
+  /**
+   * Get a repository of the given shape in the work directory, generating it if not yet.
+   *
+   * @param shape shape
+   * @return the path to the .git directory of the repository, which is what the Goslings
+   *         server accepts as a URI of a local repository. Never null.
+   * @throws IOException if an I/O error occurs.
+   */
+  public static Path get(RepositoryShape shape) throws IOException {
+    Path dir = getWorkDir().resolve(shape.toString().replace(':', '-'));
+    Path gitDir = dir.resolve(Constants.DOT_GIT);
+    Path shapeFile = gitDir.resolve(SHAPE_FILE_NAME);
+    if (
+      Files.exists(shapeFile)
+        && new String(Files.readAllBytes(shapeFile), StandardCharsets.UTF_8)
+             .equals(shape.toString())
+    ) {
+      return gitDir;
+    }
+
+    Path tmpDir = dir.resolveSibling(dir.getFileName() + ".tmp");
+    for (Path path: new Path[] {dir, tmpDir}) {
+      if (Files.exists(path)) {
+        FileUtils.delete(path.toFile(), FileUtils.RECURSIVE);
+      }
+    }
+    Files.createDirectories(tmpDir);
+    generate(tmpDir.toFile(), shape);
+    Files.write(
+      tmpDir.resolve(Constants.DOT_GIT).resolve(SHAPE_FILE_NAME),
+      shape.toString().getBytes(StandardCharsets.UTF_8)
+    );
+    Files.move(tmpDir, dir);
+    return gitDir;
+  }
+
+  private static void generate(File dir, RepositoryShape shape) throws IOException {
+    try (
+      Git git = Git.init().setDirectory(dir).call();
+      ObjectInserter inserter = git.getRepository().newObjectInserter();
+    ) {
+      Repository repo = git.getRepository();
+      // Goslings server opens a repository through a symlink to its .git directory, so it can't
+      // tell the repository isn't bare unless core.bare is set explicitly like Git does.
+      StoredConfig config = repo.getConfig();
+      config.setBoolean(
+        ConfigConstants.CONFIG_CORE_SECTION, null, ConfigConstants.CONFIG_KEY_BARE, false
+      );
+      config.save();
+
+      int levels = shape.getDepth() + 1;
+      int fanOut = shape.getFanOut();
+
+      ObjectId[][] blobs = new ObjectId[levels][fanOut];
+      for (int level = 0; level < levels; level++) {
+        for (int i = 0; i < fanOut; i++) {
+          blobs[level][i] = insertBlob(inserter, "level " + level + " file " + i + "\n");
+        }
+      }
+      ObjectId[] trees = new ObjectId[levels];
+      for (int level = levels - 1; level >= 0; level--) {
+        trees[level] = insertTree(inserter, blobs[level], subtree(trees, level));
+      }
+
+      int numCommits = shape.getCommits();
+      int numBranches = shape.getBranches();
+      ObjectId parent = null;
+      int nextBranch = 1;
+      for (int i = 0; i < numCommits; i++) {
+        int level = i % levels;
+        int file = (i / levels) % fanOut;
+        blobs[level][file]
+          = insertBlob(inserter, "level " + level + " file " + file + " rev " + i + "\n");
+        for (int l = level; l >= 0; l--) {
+          trees[l] = insertTree(inserter, blobs[l], subtree(trees, l));
+        }
+
+        PersonIdent ident = new PersonIdent(AUTHOR, BASE_TIME + i * 60000L, 0);
+        CommitBuilder commit = new CommitBuilder();
+        commit.setTreeId(trees[0]);
+        if (parent != null) {
+          commit.setParentId(parent);
+        }
+        commit.setAuthor(ident);
+        commit.setCommitter(ident);
+        commit.setMessage("Modify file " + file + " at level " + level + "\n");
+        parent = inserter.insert(commit);
+
+        if (nextBranch < numBranches && i + 1 == (long) numCommits * nextBranch / numBranches) {
+          updateRef(repo, Constants.R_HEADS + "branch-" + nextBranch, parent);
+          nextBranch++;
+        }
+      }
+
+      ObjectId indexBlob = insertBlob(inserter, "index entry\n");
+      inserter.flush();
+      updateRef(repo, Constants.R_HEADS + Constants.MASTER, parent);
+
+      DirCache index = repo.lockDirCache();
+      try {
+        DirCacheBuilder builder = index.builder();
+        for (int i = 0; i < shape.getIndexEntries(); i++) {
+          DirCacheEntry entry
+            = new DirCacheEntry(String.format("index/dir-%03d/file-%05d", i / fanOut, i));
+          entry.setFileMode(FileMode.REGULAR_FILE);
+          entry.setObjectId(indexBlob);
+          builder.add(entry);
+        }
+        builder.commit();
+      } finally {
+        index.unlock();
+      }
+    } catch (GitAPIException e) {
+      throw new IOException("Failed to initialize a repository in " + dir, e);
+    }
+  }
+
+  private static ObjectId subtree(ObjectId[] trees, int level) {
+    return level + 1 < trees.length ? trees[level + 1] : null;
+  }
+
+  private static ObjectId insertBlob(
+    ObjectInserter inserter, String contents
+  ) throws IOException {
+    return inserter.insert(Constants.OBJ_BLOB, contents.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static ObjectId insertTree(
+    ObjectInserter inserter, ObjectId[] blobs, ObjectId subtree
+  ) throws IOException {
+    TreeFormatter formatter = new TreeFormatter();
+    // Entries have to be sorted by name. "dir" comes before "file-*".
+    if (subtree != null) {
+      formatter.append(DIR_NAME, FileMode.TREE, subtree);
+    }
+    for (int i = 0; i < blobs.length; i++) {
+      formatter.append(String.format("file-%05d", i), FileMode.REGULAR_FILE, blobs[i]);
+    }
+    return inserter.insert(formatter);
+  }
+
+  private static void updateRef(Repository repo, String name, ObjectId id) throws IOException {
+    RefUpdate update = repo.updateRef(name);
+    update.setNewObjectId(id);
+    update.setForceUpdate(true);
+    RefUpdate.Result result = update.update();
+    if (result != RefUpdate.Result.NEW && result != RefUpdate.Result.FORCED) {
+      throw new IOException("Failed to update " + name + ": " + result);
+    }
+  }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.benchmarks.load;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of latencies in microseconds with a fixed memory footprint.
+ * Values are counted in log-linear buckets: each power of two is split into
+ * {@value #SUB_BUCKETS} buckets, so that a percentile is off by at most about 3%.
+ *
+ * @author Kaito Yamada
+ */
+final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private final AtomicLongArray counts
+    = new AtomicLongArray((64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+
+  /**
+   * @param micros a latency in microseconds.
+   * @param error whether the request failed.
+   */
+  void record(long micros, boolean error) {
+    long value = Math.max(0L, micros);
+    counts.incrementAndGet(indexOf(value));
+    count.increment();
+    sum.add(value);
+    if (error) {
+      errors.increment();
+    }
+  }
+
+  /**
+   * @return the number of recorded requests.
+   */
+  long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * @return the number of failed requests.
+   */
+  long getErrors() {
+    return errors.sum();
+  }
+
+  /**
+   * @return the mean of latencies in microseconds.
+   */
+  double getMean() {
+    long n = count.sum();
+    return n == 0 ? 0d : (double) sum.sum() / n;
+  }
+
+  /**
+   * @param percentile a percentile between 0 and 100.
+   * @return the upper bound in microseconds of the bucket which contains the percentile.
+   */
+  long getPercentile(double percentile) {
+    long n = count.sum();
+    if (n == 0) {
+      return 0L;
+    }
+    long rank = Math.max(1L, (long) Math.ceil(n * percentile / 100d));
+    long seen = 0L;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return upperBoundOf(i);
+      }
+    }
+    return upperBoundOf(counts.length() - 1);
+  }
+
+  private static int indexOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS - 1;
+    return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+  }
+
+  private static long upperBoundOf(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.benchmarks.load;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latencies of requests collected by {@link VirtualUser}s for each step of the browse flow.
+ * Requests are recorded only while recording is on, so that warm-up traffic is excluded.
+ *
+ * @author Kaito Yamada
+ */
+final class LoadStatistics {
+
+  private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+  private volatile boolean recording = false;
+
+  /**
+   * @param recording whether to record requests.
+   */
+  void setRecording(boolean recording) {
+    this.recording = recording;
+  }
+
+  /**
+   * @param step the name of the step of the browse flow.
+   * @param micros the latency in microseconds.
+   * @param error whether the step failed.
+   */
+  void record(String step, long micros, boolean error) {
+    if (recording) {
+      histograms.computeIfAbsent(step, k -> new LatencyHistogram()).record(micros, error);
+    }
+  }
+
+  /**
+   * @return histograms by step sorted by the step names. Never null.
+   */
+  Map<String, LatencyHistogram> getHistograms() {
+    return new TreeMap<>(histograms);
+  }
+
+}
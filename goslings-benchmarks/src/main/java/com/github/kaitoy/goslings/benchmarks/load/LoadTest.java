@@ -0,0 +1,264 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.benchmarks.load;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.kaitoy.goslings.benchmarks.RepositoryShape;
+import com.github.kaitoy.goslings.benchmarks.SyntheticRepository;
+import com.github.kaitoy.goslings.server.Application;
+
+/**
+ * A load test which starts Goslings server in this process and lets {@link VirtualUser}s
+ * browse synthetic repositories through the REST API concurrently.
+ * It reports throughput and latency percentiles of each step of the browse flow, and
+ * GC activity and heap usage of the process during the measurement, to stdout and a JSON file.
+ * Everything runs locally, so no network access is needed.
+ * <p>
+ * Options are given as --name=value:
+ * <ul>
+ * <li>shapes: comma-separated shapes of repositories to browse. (default: medium)</li>
+ * <li>users: the number of concurrent virtual users. (default: 8)</li>
+ * <li>warmUp: the warm-up time in seconds, which is excluded from the results. (default: 10)</li>
+ * <li>duration: the measurement time in seconds. (default: 60)</li>
+ * <li>thinkTime: the time in milliseconds each user waits between requests. (default: 0)</li>
+ * <li>indexPolls: the number of polls of contents of the index in a flow. (default: 3)</li>
+ * <li>report: the path to the JSON report. (default: load-test-report.json)</li>
+ * </ul>
+ *
+ * @author Kaito Yamada
+ */
+public final class LoadTest {
+
+  private static final double[] PERCENTILES = {50d, 90d, 99d, 99.9d, 100d};
+
+  private LoadTest() { throw new AssertionError(); }
+
+  /**
+   * @param args options.
+   * @throws Exception if the test fails.
+   */
+  public static void main(String[] args) throws Exception {
+    Properties options = parseOptions(args);
+    int users = Integer.parseInt(options.getProperty("users", "8"));
+    long warmUp = TimeUnit.SECONDS.toMillis(Long.parseLong(options.getProperty("warmUp", "10")));
+    long duration
+      = TimeUnit.SECONDS.toMillis(Long.parseLong(options.getProperty("duration", "60")));
+    long thinkTime = Long.parseLong(options.getProperty("thinkTime", "0"));
+    int indexPolls = Integer.parseInt(options.getProperty("indexPolls", "3"));
+    File report = new File(options.getProperty("report", "load-test-report.json"));
+
+    List<String> uris = new ArrayList<>();
+    for (String shape: options.getProperty("shapes", "medium").split(",")) {
+      System.out.println("Preparing a repository of the shape " + shape + "...");
+      uris.add(SyntheticRepository.get(RepositoryShape.valueOf(shape.trim())).toString());
+    }
+
+    // Devtools would restart the application in another class loader.
+    System.setProperty("spring.devtools.restart.enabled", "false");
+    // Let HttpURLConnection keep a connection alive for each user.
+    System.setProperty("http.maxConnections", String.valueOf(users));
+    ConfigurableApplicationContext context
+      = SpringApplication.run(
+          Application.class,
+          "--server.port=0",
+          "--spring.main.banner-mode=off",
+          "--com.github.kaitoy.goslings.server.fetch.enabled=false",
+          "--com.github.kaitoy.goslings.server.maintenance.enabled=false"
+        );
+    try {
+      String baseUrl
+        = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+      Map<String, Object> results
+        = run(baseUrl, uris, users, warmUp, duration, thinkTime, indexPolls);
+      report.getAbsoluteFile().getParentFile().mkdirs();
+      new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(report, results);
+      System.out.println("The report has been written into " + report);
+    } finally {
+      context.close();
+    }
+  }
+
+  private static Map<String, Object> run(
+    String baseUrl,
+    List<String> uris,
+    int users,
+    long warmUp,
+    long duration,
+    long thinkTime,
+    int indexPolls
+  ) throws InterruptedException {
+    LoadStatistics statistics = new LoadStatistics();
+    ExecutorService executor = Executors.newFixedThreadPool(users);
+    long deadline = System.currentTimeMillis() + warmUp + duration;
+    for (int i = 0; i < users; i++) {
+      executor.execute(
+        new VirtualUser(baseUrl, uris, statistics, deadline, thinkTime, indexPolls, i)
+      );
+    }
+
+    System.out.println("Warming up for " + warmUp + " ms...");
+    Thread.sleep(warmUp);
+    GcSnapshot before = new GcSnapshot();
+    ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+    statistics.setRecording(true);
+    System.out.println("Measuring for " + duration + " ms with " + users + " users...");
+    long start = System.nanoTime();
+    Thread.sleep(duration);
+    statistics.setRecording(false);
+    double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+    GcSnapshot after = new GcSnapshot();
+
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.MINUTES);
+
+    Map<String, Object> results = new LinkedHashMap<>();
+    Map<String, Object> settings = new LinkedHashMap<>();
+    settings.put("repositories", uris);
+    settings.put("users", users);
+    settings.put("warmUpMillis", warmUp);
+    settings.put("durationMillis", duration);
+    settings.put("thinkTimeMillis", thinkTime);
+    settings.put("indexPolls", indexPolls);
+    results.put("settings", settings);
+    results.put("steps", summarizeSteps(statistics, elapsedSeconds));
+    results.put("memory", summarizeMemory(before, after, elapsedSeconds));
+    return results;
+  }
+
+  private static Map<String, Object> summarizeSteps(
+    LoadStatistics statistics, double elapsedSeconds
+  ) {
+    Map<String, Object> steps = new LinkedHashMap<>();
+    System.out.println();
+    System.out.println(
+      String.format(
+        "%-14s %9s %7s %9s %10s %10s %10s %10s %10s %10s",
+        "step", "count", "errors", "req/s", "mean(ms)",
+        "p50(ms)", "p90(ms)", "p99(ms)", "p99.9(ms)", "max(ms)"
+      )
+    );
+    for (Map.Entry<String, LatencyHistogram> entry: statistics.getHistograms().entrySet()) {
+      LatencyHistogram histogram = entry.getValue();
+      Map<String, Object> step = new LinkedHashMap<>();
+      step.put("count", histogram.getCount());
+      step.put("errors", histogram.getErrors());
+      step.put("throughput", histogram.getCount() / elapsedSeconds);
+      step.put("meanMillis", histogram.getMean() / 1000d);
+      Map<String, Object> percentiles = new LinkedHashMap<>();
+      StringBuilder line
+        = new StringBuilder()
+            .append(
+              String.format(
+                "%-14s %9d %7d %9.1f %10.2f",
+                entry.getKey(),
+                histogram.getCount(),
+                histogram.getErrors(),
+                histogram.getCount() / elapsedSeconds,
+                histogram.getMean() / 1000d
+              )
+            );
+      for (double percentile: PERCENTILES) {
+        double millis = histogram.getPercentile(percentile) / 1000d;
+        percentiles.put(String.valueOf(percentile), millis);
+        line.append(String.format(" %10.2f", millis));
+      }
+      step.put("percentileMillis", percentiles);
+      steps.put(entry.getKey(), step);
+      System.out.println(line);
+    }
+    return steps;
+  }
+
+  private static Map<String, Object> summarizeMemory(
+    GcSnapshot before, GcSnapshot after, double elapsedSeconds
+  ) {
+    long peakHeapUsed = 0L;
+    for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+        peakHeapUsed += pool.getPeakUsage().getUsed();
+      }
+    }
+
+    Map<String, Object> memory = new LinkedHashMap<>();
+    Map<String, Object> collectors = new LinkedHashMap<>();
+    long totalGcMillis = 0L;
+    System.out.println();
+    for (String name: after.counts.keySet()) {
+      long count = after.counts.get(name) - before.counts.getOrDefault(name, 0L);
+      long millis = after.times.get(name) - before.times.getOrDefault(name, 0L);
+      totalGcMillis += millis;
+      Map<String, Object> collector = new LinkedHashMap<>();
+      collector.put("collections", count);
+      collector.put("timeMillis", millis);
+      collectors.put(name, collector);
+      System.out.println(
+        String.format("GC %-20s %7d collections %9d ms", name, count, millis)
+      );
+    }
+    double gcTimeRatio = totalGcMillis / (elapsedSeconds * 1000d);
+    memory.put("collectors", collectors);
+    memory.put("gcTimeRatio", gcTimeRatio);
+    memory.put("peakHeapUsedBytes", peakHeapUsed);
+    memory.put("heapUsedBytes", after.heapUsed);
+    memory.put("maxHeapBytes", Runtime.getRuntime().maxMemory());
+    System.out.println(
+      String.format(
+        "GC time ratio: %.2f%%, peak heap used: %d MiB, heap used at the end: %d MiB",
+        gcTimeRatio * 100d, peakHeapUsed >> 20, after.heapUsed >> 20
+      )
+    );
+    return memory;
+  }
+
+  private static Properties parseOptions(String[] args) {
+    Properties options = new Properties();
+    for (String arg: args) {
+      if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+        throw new IllegalArgumentException("Options must be given as --name=value: " + arg);
+      }
+      int eq = arg.indexOf('=');
+      options.setProperty(arg.substring(2, eq), arg.substring(eq + 1));
+    }
+    return options;
+  }
+
+  private static final class GcSnapshot {
+
+    private final Map<String, Long> counts = new LinkedHashMap<>();
+    private final Map<String, Long> times = new LinkedHashMap<>();
+    private final long heapUsed;
+
+    private GcSnapshot() {
+      for (GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()) {
+        counts.put(gc.getName(), gc.getCollectionCount());
+        times.put(gc.getName(), gc.getCollectionTime());
+      }
+      this.heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+  }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.benchmarks.load;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A user who repeatedly browses a repository through the REST API like Goslings client does:
+ * get a token, get commits and refs, expand trees of some commits, show contents of some
+ * objects, get the index, and then poll contents of the index.
+ *
+ * @author Kaito Yamada
+ */
+final class VirtualUser implements Runnable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(VirtualUser.class);
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final int TREES_PER_REQUEST = 10;
+  private static final int TREE_EXPANSION_DEPTH = 2;
+  private static final int CONTENTS_PER_FLOW = 3;
+
+  private final String baseUrl;
+  private final List<String> uris;
+  private final LoadStatistics statistics;
+  private final long deadline;
+  private final long thinkTime;
+  private final int indexPolls;
+  private final Random random;
+
+  /**
+   * @param baseUrl the URL of the server, e.g. http://localhost:8080
+   * @param uris the URIs of repositories to browse.
+   * @param statistics statistics to record latencies into.
+   * @param deadline the time in milliseconds to stop at.
+   * @param thinkTime the time in milliseconds to wait between requests.
+   * @param indexPolls the number of polls of contents of the index in a flow.
+   * @param seed the seed of randomness of the choices of repositories and objects.
+   */
+  VirtualUser(
+    String baseUrl,
+    List<String> uris,
+    LoadStatistics statistics,
+    long deadline,
+    long thinkTime,
+    int indexPolls,
+    long seed
+  ) {
+    this.baseUrl = baseUrl;
+    this.uris = uris;
+    this.statistics = statistics;
+    this.deadline = deadline;
+    this.thinkTime = thinkTime;
+    this.indexPolls = indexPolls;
+    this.random = new Random(seed);
+  }
+
+  @Override
+  public void run() {
+    while (System.currentTimeMillis() < deadline && !Thread.currentThread().isInterrupted()) {
+      long start = System.nanoTime();
+      boolean completed = false;
+      try {
+        completed = browse();
+      } catch (IOException e) {
+        LOG.debug("A browse flow failed.", e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      statistics.record("flow", elapsedMicros(start), !completed);
+    }
+  }
+
+  private boolean browse() throws IOException, InterruptedException {
+    String uri = uris.get(random.nextInt(uris.size()));
+    JsonNode token = getJson("tokens", "/v1/tokens?uri=" + URLEncoder.encode(uri, "UTF-8"));
+    if (token == null) {
+      return false;
+    }
+    String prefix = "/v1/" + token.get("text").asText();
+
+    JsonNode commits = getJson("commits", prefix + "/objects/commits");
+    if (
+      commits == null
+        || getJson("branches", prefix + "/refs/branches") == null
+        || getJson("tags", prefix + "/refs/tags") == null
+        || getJson("symrefs", prefix + "/symrefs") == null
+    ) {
+      return false;
+    }
+
+    List<String> treeIds = new ArrayList<>();
+    for (int i = 0; i < TREES_PER_REQUEST && commits.size() > 0; i++) {
+      treeIds.add(commits.get(random.nextInt(commits.size())).get("treeId").asText());
+    }
+    List<String> blobIds = new ArrayList<>();
+    for (int depth = 0; depth <= TREE_EXPANSION_DEPTH && !treeIds.isEmpty(); depth++) {
+      JsonNode trees
+        = getJson("trees", prefix + "/objects/trees/" + String.join(",", treeIds));
+      if (trees == null) {
+        return false;
+      }
+      treeIds = new ArrayList<>();
+      for (JsonNode tree: trees) {
+        collectIds(tree.get("trees"), treeIds);
+        collectIds(tree.get("blobs"), blobIds);
+      }
+    }
+
+    for (int i = 0; i < CONTENTS_PER_FLOW && !blobIds.isEmpty(); i++) {
+      String blobId = blobIds.get(random.nextInt(blobIds.size()));
+      if (get("contents", prefix + "/objects/" + blobId + "/contents", null) == null) {
+        return false;
+      }
+    }
+
+    if (getJson("index", prefix + "/index") == null) {
+      return false;
+    }
+    String lastModified = null;
+    for (int i = 0; i < indexPolls; i++) {
+      Response res = get("indexContents", prefix + "/index/contents", lastModified);
+      if (res == null) {
+        return false;
+      }
+      if (res.lastModified != null) {
+        lastModified = res.lastModified;
+      }
+    }
+    return true;
+  }
+
+  private void collectIds(JsonNode idToName, List<String> ids) {
+    if (idToName == null) {
+      return;
+    }
+    Iterator<String> iter = idToName.fieldNames();
+    while (iter.hasNext() && ids.size() < TREES_PER_REQUEST) {
+      ids.add(iter.next());
+    }
+  }
+
+  private JsonNode getJson(String step, String path) throws IOException, InterruptedException {
+    Response res = get(step, path, null);
+    return res != null ? MAPPER.readTree(res.body) : null;
+  }
+
+  /**
+   * @return the response, or null if the server returned an error.
+   */
+  private Response get(
+    String step, String path, String ifModifiedSince
+  ) throws IOException, InterruptedException {
+    if (thinkTime > 0) {
+      Thread.sleep(thinkTime);
+    }
+
+    HttpURLConnection conn = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+    if (ifModifiedSince != null) {
+      conn.setRequestProperty("If-Modified-Since", ifModifiedSince);
+    }
+    long start = System.nanoTime();
+    try {
+      int status = conn.getResponseCode();
+      InputStream in = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+      // Read the body to the end so that the connection is reused.
+      byte[] body = readFully(in);
+      boolean error = status >= 400;
+      statistics.record(step, elapsedMicros(start), error);
+      if (error) {
+        LOG.debug("{} returned {}: {}", path, status, new String(body, "UTF-8"));
+        return null;
+      }
+      return new Response(body, conn.getHeaderField("Last-Modified"));
+    } catch (IOException e) {
+      statistics.record(step, elapsedMicros(start), true);
+      throw e;
+    }
+  }
+
+  private static byte[] readFully(InputStream in) throws IOException {
+    if (in == null) {
+      return new byte[0];
+    }
+    try (InputStream is = in) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[8192];
+      int len;
+      while ((len = is.read(buf)) != -1) {
+        out.write(buf, 0, len);
+      }
+      return out.toByteArray();
+    }
+  }
+
+  private static long elapsedMicros(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+  }
+
+  private static final class Response {
+
+    private final byte[] body;
+    private final String lastModified;
+
+    private Response(byte[] body, String lastModified) {
+      this.body = body;
+      this.lastModified = lastModified;
+    }
+
+  }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.dao.jgit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.kaitoy.goslings.benchmarks.RepositoryShape;
+import com.github.kaitoy.goslings.benchmarks.SyntheticRepository;
+
+/**
+ * Benchmarks of the conversions from Git objects to resources in {@link ObjectDaoImpl},
+ * which are measured without reading objects from the repository.
+ *
+ * @author Kaito Yamada
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ObjectConversionBenchmark {
+
+  /**
+   * The shape of the repository. See {@link RepositoryShape#valueOf(String)}.
+   */
+  @Param({"small", "medium", "large"})
+  public String shape;
+
+  private final ObjectDaoImpl objectDao = new ObjectDaoImpl();
+  private final List<RevCommit> commits = new ArrayList<>();
+  private byte[] rootTree;
+
+  /**
+   * Load a raw tree and parsed commits.
+   *
+   * @throws IOException if an I/O error occurs.
+   */
+  @Setup
+  public void setUp() throws IOException {
+    String token
+      = RepositoryResolver.getInstance()
+          .getToken(SyntheticRepository.get(RepositoryShape.valueOf(shape)).toString());
+    Repository repo = RepositoryResolver.getInstance().getRepository(token);
+    try (RevWalk walk = new RevWalk(repo)) {
+      walk.markStart(walk.parseCommit(repo.resolve(Constants.HEAD)));
+      for (RevCommit commit: walk) {
+        commits.add(commit);
+      }
+    }
+    ObjectId rootTreeId = commits.get(0).getTree();
+    rootTree = repo.open(rootTreeId, Constants.OBJ_TREE).getBytes();
+  }
+
+  /**
+   * @param blackhole blackhole
+   * @throws IOException if an I/O error occurs.
+   */
+  @Benchmark
+  public void parseTree(Blackhole blackhole) throws IOException {
+    blackhole.consume(objectDao.parseTree(rootTree));
+  }
+
+  /**
+   * @param blackhole blackhole
+   */
+  @Benchmark
+  public void convertToCommit(Blackhole blackhole) {
+    for (RevCommit commit: commits) {
+      blackhole.consume(objectDao.convertToCommit(commit));
+    }
+  }
+
+}
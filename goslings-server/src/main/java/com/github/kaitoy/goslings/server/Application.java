@@ -8,8 +8,19 @@
 
 package com.github.kaitoy.goslings.server;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import com.github.kaitoy.goslings.server.dao.DaoException;
+import com.github.kaitoy.goslings.server.export.StaticExporter;
 
 /**
  * The main class of this application.
@@ -17,15 +28,70 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
  * @author Kaito Yamada
  */
 @SpringBootApplication
+@EnableScheduling
 public class Application {
 
+  private static final String EXPORT_COMMAND = "export";
+  private static final String BACKGROUND_TASKS_PROP
+    = "com.github.kaitoy.goslings.server.backgroundTasks.enabled";
+
   /**
    * Main method of this application.
+   * If the first argument is "export", this exports a repository to static files by
+   * {@link StaticExporter} instead of starting the server.
    *
    * @param args command line arguments.
    */
   public static void main(String[] args) {
+    if (args.length > 0 && EXPORT_COMMAND.equals(args[0])) {
+      System.exit(export(args));
+    }
     SpringApplication.run(Application.class, args);
   }
 
+  /**
+   * @param args command line arguments in the form of
+   *        export &lt;repository&gt; &lt;output directory&gt; [--&lt;property&gt;=&lt;value&gt; ...]
+   * @return the exit status.
+   */
+  private static int export(String[] args) {
+    List<String> operands = new ArrayList<>();
+    List<String> options = new ArrayList<>();
+    for (int i = 1; i < args.length; i++) {
+      if (args[i].startsWith("--")) {
+        options.add(args[i]);
+      }
+      else {
+        operands.add(args[i]);
+      }
+    }
+    if (operands.size() != 2) {
+      System.err.println(
+        "Usage: java -jar goslings-server.jar export <repository path or URL> <output directory>"
+          + " [--<property>=<value> ...]"
+      );
+      return 2;
+    }
+
+    // A restart by devtools would start the server in a new context.
+    System.setProperty("spring.devtools.restart.enabled", "false");
+    try (
+      ConfigurableApplicationContext context
+        = new SpringApplicationBuilder(Application.class)
+            .web(false)
+            // Fetches, gc, and evictions must not touch the repository during the export.
+            .properties(BACKGROUND_TASKS_PROP + "=false")
+            .run(options.toArray(new String[options.size()]))
+    ) {
+      String token
+        = context.getBean(StaticExporter.class)
+            .export(operands.get(0), Paths.get(operands.get(1)));
+      System.out.println(token);
+      return 0;
+    } catch (IOException | DaoException e) {
+      System.err.println("Failed to export " + operands.get(0) + ": " + e.getMessage());
+      return 1;
+    }
+  }
+
 }
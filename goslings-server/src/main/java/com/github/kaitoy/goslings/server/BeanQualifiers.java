@@ -23,6 +23,16 @@ public final class BeanQualifiers {
    */
   public static final String DAO_JGIT = "jgit";
 
+  /**
+   * The executor for DAO calls which mainly use CPU, e.g. history walks.
+   */
+  public static final String EXECUTOR_WALK = "walk";
+
+  /**
+   * The executor for DAO calls which mainly wait for I/O, e.g. clones.
+   */
+  public static final String EXECUTOR_CLONE = "clone";
+
   private BeanQualifiers() {
     throw new AssertionError("Don't instantiate me.");
   }
@@ -0,0 +1,362 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.cache;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A size-bounded cache of serialized responses on disk, which survives restarts.
+ * Each response is stored in a file as gzipped JSON with its ETag and Cache-Control headers, and
+ * read back through a memory-mapped buffer, so that it can be sent to clients which accept gzip
+ * without being decompressed or even copied into the heap.
+ * When the total size of the files exceeds the maximum, the least recently used ones are
+ * deleted. The order of use is kept in the last modified time of the files, so that it's
+ * restored after restarts.
+ * Responses are serialized and written on a background thread, and dropped if it can't keep up.
+ *
+ * @author Kaito Yamada
+ */
+@Component
+@ConditionalOnProperty(name="com.github.kaitoy.goslings.server.responseCache.enabled")
+public final class DiskResponseCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DiskResponseCache.class);
+  private static final String METRIC_PREFIX = "goslings.responseCache.";
+  private static final int MAGIC = 0x676f7331; // "gos1"
+  private static final String TMP_FILE_SUFFIX = ".tmp";
+  private static final int WRITE_QUEUE_CAPACITY = 64;
+
+  private final Path dir;
+  private final long maxSize;
+  private final ObjectMapper objectMapper;
+  private final ThreadPoolExecutor writer;
+  private final Counter hits;
+  private final Counter misses;
+  private final Counter evictions;
+
+  /*
+   * Mapping from keys to sizes of the files in access order, guarded by itself.
+   */
+  private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long totalSize = 0;
+
+  /**
+   * @param dir the directory to store responses in. It's created if it doesn't exist.
+   * @param maxSize the maximum total size in bytes of the stored responses.
+   * @param objectMapper the object mapper to serialize responses with.
+   * @param registry the registry to register metrics to.
+   * @throws IOException if the directory can't be read.
+   */
+  public DiskResponseCache(
+    @Value(
+      "${com.github.kaitoy.goslings.server.responseCache.dir:"
+        + "${com.github.kaitoy.goslings.server.reposDir:${java.io.tmpdir}/goslings}/cache}"
+    )
+    String dir,
+    @Value("${com.github.kaitoy.goslings.server.responseCache.maxSize:536870912}")
+    long maxSize,
+    ObjectMapper objectMapper,
+    MetricRegistry registry
+  ) throws IOException {
+    this.dir = Paths.get(dir);
+    this.maxSize = maxSize;
+    this.objectMapper = objectMapper;
+    this.writer
+      = new ThreadPoolExecutor(
+          1,
+          1,
+          0L,
+          TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<>(WRITE_QUEUE_CAPACITY),
+          r -> {
+            Thread t = new Thread(r, "goslings-response-cache-writer");
+            t.setDaemon(true);
+            return t;
+          },
+          new ThreadPoolExecutor.DiscardPolicy()
+        );
+    this.hits = registry.counter(METRIC_PREFIX + "hits");
+    this.misses = registry.counter(METRIC_PREFIX + "misses");
+    this.evictions = registry.counter(METRIC_PREFIX + "evictions");
+    registry.register(METRIC_PREFIX + "size", (Gauge<Long>) this::getTotalSize);
+    registry.register(METRIC_PREFIX + "entries", (Gauge<Integer>) this::getEntryCount);
+
+    Files.createDirectories(this.dir);
+    loadEntries();
+  }
+
+  private void loadEntries() throws IOException {
+    List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+      for (Path file: stream) {
+        if (file.getFileName().toString().endsWith(TMP_FILE_SUFFIX)) {
+          // Left by a crash while writing.
+          Files.deleteIfExists(file);
+        }
+        else {
+          files.add(file);
+        }
+      }
+    }
+    files.sort(Comparator.comparing(this::getLastModifiedTime));
+    synchronized (entries) {
+      for (Path file: files) {
+        long size = Files.size(file);
+        entries.put(file.getFileName().toString(), size);
+        totalSize += size;
+      }
+    }
+    evict();
+    LOG.info("Loaded {} cached responses ({} bytes) from {}.", entries.size(), totalSize, dir);
+  }
+
+  private FileTime getLastModifiedTime(Path file) {
+    try {
+      return Files.getLastModifiedTime(file);
+    } catch (IOException e) {
+      return FileTime.fromMillis(0);
+    }
+  }
+
+  /**
+   * @param key a key of a response. It has to be usable as a file name.
+   * @return the response. Null if not cached.
+   */
+  public CachedResponse get(String key) {
+    synchronized (entries) {
+      if (entries.get(key) == null) {
+        misses.inc();
+        return null;
+      }
+    }
+
+    Path file = dir.resolve(key);
+    try (FileChannel fc = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer buf = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+      if (buf.getInt() != MAGIC) {
+        throw new IOException("Broken cache file: " + file);
+      }
+      String etag = readString(buf);
+      String cacheControl = readString(buf);
+      Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+      hits.inc();
+      return new CachedResponse(etag, cacheControl, buf.slice());
+    } catch (NoSuchFileException e) {
+      // Evicted by another thread.
+      misses.inc();
+      return null;
+    } catch (IOException | BufferUnderflowException e) {
+      // BufferUnderflowException is thrown if the file is truncated.
+      LOG.warn("Failed to read a cached response {}.", file, e);
+      remove(key);
+      misses.inc();
+      return null;
+    }
+  }
+
+  private String readString(ByteBuffer buf) {
+    byte[] bytes = new byte[buf.getShort() & 0xFFFF];
+    buf.get(bytes);
+    return bytes.length == 0 ? null : new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Serialize and store a response on a background thread.
+   *
+   * @param key a key of the response. It has to be usable as a file name.
+   * @param body the response body, which must not be modified afterward.
+   * @param etag the ETag header of the response. Maybe null.
+   * @param cacheControl the Cache-Control header of the response. Maybe null.
+   */
+  public void put(String key, Object body, String etag, String cacheControl) {
+    writer.execute(() -> write(key, body, etag, cacheControl));
+  }
+
+  private void write(String key, Object body, String etag, String cacheControl) {
+    Path file = dir.resolve(key);
+    Path tmpFile = dir.resolve(key + TMP_FILE_SUFFIX);
+    try {
+      try (
+        OutputStream out = Files.newOutputStream(tmpFile);
+        DataOutputStream dataOut = new DataOutputStream(out)
+      ) {
+        dataOut.writeInt(MAGIC);
+        writeString(dataOut, etag);
+        writeString(dataOut, cacheControl);
+        dataOut.flush();
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+          objectMapper.writeValue(gzipOut, body);
+        }
+      }
+      long size = Files.size(tmpFile);
+      if (size > maxSize) {
+        Files.delete(tmpFile);
+        return;
+      }
+      Files.move(tmpFile, file, StandardCopyOption.ATOMIC_MOVE);
+      synchronized (entries) {
+        Long oldSize = entries.put(key, size);
+        totalSize += size - (oldSize != null ? oldSize : 0);
+      }
+      evict();
+    } catch (IOException e) {
+      LOG.warn("Failed to store a response {}.", file, e);
+      try {
+        Files.deleteIfExists(tmpFile);
+      } catch (IOException e1) {
+        LOG.warn("Failed to delete {}.", tmpFile, e1);
+      }
+    }
+  }
+
+  private void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+    out.writeShort(bytes.length);
+    out.write(bytes);
+  }
+
+  private void evict() {
+    List<String> evicted = new ArrayList<>();
+    synchronized (entries) {
+      Iterator<Map.Entry<String, Long>> iter = entries.entrySet().iterator();
+      while (totalSize > maxSize && iter.hasNext()) {
+        Map.Entry<String, Long> entry = iter.next();
+        totalSize -= entry.getValue();
+        evicted.add(entry.getKey());
+        iter.remove();
+      }
+    }
+    for (String key: evicted) {
+      // A reader which has mapped the file can still read it.
+      deleteFile(key);
+      evictions.inc();
+    }
+  }
+
+  private void remove(String key) {
+    synchronized (entries) {
+      Long size = entries.remove(key);
+      if (size != null) {
+        totalSize -= size;
+      }
+    }
+    deleteFile(key);
+  }
+
+  private void deleteFile(String key) {
+    try {
+      Files.deleteIfExists(dir.resolve(key));
+    } catch (IOException e) {
+      LOG.warn("Failed to delete a cached response {}.", key, e);
+    }
+  }
+
+  /**
+   * @return the total size in bytes of the stored responses.
+   */
+  public long getTotalSize() {
+    synchronized (entries) {
+      return totalSize;
+    }
+  }
+
+  /**
+   * @return the number of the stored responses.
+   */
+  public int getEntryCount() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  /**
+   * Stop the background thread. Responses which are not written yet are dropped.
+   */
+  @PreDestroy
+  public void shutdown() {
+    writer.shutdownNow();
+  }
+
+  /**
+   * A cached response.
+   */
+  public static final class CachedResponse {
+
+    private final String etag;
+    private final String cacheControl;
+    private final ByteBuffer gzippedBody;
+
+    private CachedResponse(String etag, String cacheControl, ByteBuffer gzippedBody) {
+      this.etag = etag;
+      this.cacheControl = cacheControl;
+      this.gzippedBody = gzippedBody;
+    }
+
+    /**
+     * @return the ETag header. Maybe null.
+     */
+    public String getEtag() {
+      return etag;
+    }
+
+    /**
+     * @return the Cache-Control header. Maybe null.
+     */
+    public String getCacheControl() {
+      return cacheControl;
+    }
+
+    /**
+     * @return the gzipped body, which is backed by a memory-mapped file.
+     */
+    public ByteBuffer getGzippedBody() {
+      return gzippedBody;
+    }
+
+  }
+
+}
@@ -0,0 +1,35 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.cache;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+/**
+ * Configuration of the on-disk response cache, which is enabled by
+ * com.github.kaitoy.goslings.server.responseCache.enabled.
+ *
+ * @author Kaito Yamada
+ */
+@Configuration
+@ConditionalOnProperty(name="com.github.kaitoy.goslings.server.responseCache.enabled")
+public class ResponseCacheConfiguration extends WebMvcConfigurerAdapter {
+
+  @Autowired
+  private ResponseCacheInterceptor interceptor;
+
+  @Override
+  public void addInterceptors(InterceptorRegistry interceptors) {
+    interceptors.addInterceptor(interceptor).addPathPatterns("/v1/**");
+  }
+
+}
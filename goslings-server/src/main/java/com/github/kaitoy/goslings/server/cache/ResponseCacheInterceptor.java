@@ -0,0 +1,282 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import com.github.kaitoy.goslings.server.BeanQualifiers;
+import com.github.kaitoy.goslings.server.controller.RestApiV1Controller;
+import com.github.kaitoy.goslings.server.dao.DaoException;
+import com.github.kaitoy.goslings.server.dao.ReferenceDao;
+import com.github.kaitoy.goslings.server.dao.RepositoryDao;
+
+/**
+ * This serves responses of REST API v1 from {@link DiskResponseCache} and stores them to it.
+ * Only responses which never change for the same request are cached, i.e. those of the APIs
+ * which address objects by SHA-1, and those of the APIs which walk the commit graph, keyed by
+ * the snapshot of the refs of the repository as well as the request.
+ * The latter are cached only for repositories which are ready, so that the servlet thread
+ * never waits for a clone to compute the snapshot.
+ * Cached responses are sent to clients which accept gzip as they are stored.
+ *
+ * @author Kaito Yamada
+ */
+@ControllerAdvice(assignableTypes=RestApiV1Controller.class)
+@ConditionalOnProperty(name="com.github.kaitoy.goslings.server.responseCache.enabled")
+public final class ResponseCacheInterceptor
+extends HandlerInterceptorAdapter implements ResponseBodyAdvice<Object> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ResponseCacheInterceptor.class);
+  private static final String KEY_ATTR = ResponseCacheInterceptor.class.getName() + ".key";
+  private static final Pattern IMMUTABLE_PATH_PATTERN
+    = Pattern.compile(
+        "^/v1/([0-9a-f]{40})/objects/"
+          + "(?:[0-9a-f]{40}/contents|trees/[^/]+|contents/[^/]+|commits/metadata"
+          + "|commits/chains/[0-9a-f]{40}/[0-9a-f]{40})$"
+      );
+  private static final Pattern SNAPSHOT_PATH_PATTERN
+    = Pattern.compile("^/v1/([0-9a-f]{40})/(?:objects/commits|refs/branches/comparisons)$");
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  @Autowired
+  private DiskResponseCache cache;
+
+  @Autowired
+  @Qualifier(BeanQualifiers.DAO_JGIT)
+  private RepositoryDao repositoryDao;
+
+  @Autowired
+  @Qualifier(BeanQualifiers.DAO_JGIT)
+  private ReferenceDao referenceDao;
+
+  @Override
+  public boolean preHandle(
+    HttpServletRequest req, HttpServletResponse res, Object handler
+  ) throws IOException {
+    if (req.getDispatcherType() != DispatcherType.REQUEST || !"GET".equals(req.getMethod())) {
+      return true;
+    }
+
+    String key = getKey(req);
+    if (key == null) {
+      return true;
+    }
+
+    DiskResponseCache.CachedResponse cached = cache.get(key);
+    if (cached == null) {
+      req.setAttribute(KEY_ATTR, key);
+      return true;
+    }
+
+    if (cached.getCacheControl() != null) {
+      res.setHeader(HttpHeaders.CACHE_CONTROL, cached.getCacheControl());
+    }
+    if (
+      cached.getEtag() != null
+      && new ServletWebRequest(req, res).checkNotModified(cached.getEtag())
+    ) {
+      return false;
+    }
+
+    res.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+    res.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    ByteBuffer body = cached.getGzippedBody();
+    if (acceptsGzip(req.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+      res.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+      res.setContentLength(body.remaining());
+      Channels.newChannel(res.getOutputStream()).write(body);
+    }
+    else {
+      try (InputStream in = new GZIPInputStream(new ByteBufferInputStream(body))) {
+        OutputStream out = res.getOutputStream();
+        byte[] buf = new byte[8192];
+        int len;
+        while ((len = in.read(buf)) != -1) {
+          out.write(buf, 0, len);
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param acceptEncoding the Accept-Encoding header. Maybe null.
+   * @return true if gzip is listed, or covered by *, with a non-zero quality value;
+   *         false otherwise.
+   */
+  private static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+
+    boolean wildcard = false;
+    for (String coding: acceptEncoding.split(",")) {
+      String[] params = coding.split(";");
+      String name = params[0].trim();
+      if (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip")) {
+        return getQuality(params) > 0d;
+      }
+      if (name.equals("*")) {
+        wildcard = getQuality(params) > 0d;
+      }
+    }
+    return wildcard;
+  }
+
+  private static double getQuality(String[] params) {
+    for (int i = 1; i < params.length; i++) {
+      String param = params[i].trim();
+      if (param.length() > 1 && Character.toLowerCase(param.charAt(0)) == 'q') {
+        String value = param.substring(1).trim();
+        if (!value.startsWith("=")) {
+          continue;
+        }
+        try {
+          return Double.parseDouble(value.substring(1).trim());
+        } catch (NumberFormatException e) {
+          return 0d;
+        }
+      }
+    }
+    return 1d;
+  }
+
+  private String getKey(HttpServletRequest req) {
+    String path = req.getRequestURI().substring(req.getContextPath().length());
+    StringBuilder sb = new StringBuilder(path);
+    if (req.getQueryString() != null) {
+      sb.append('?').append(req.getQueryString());
+    }
+
+    if (!IMMUTABLE_PATH_PATTERN.matcher(path).matches()) {
+      Matcher m = SNAPSHOT_PATH_PATTERN.matcher(path);
+      if (!m.matches() || !repositoryDao.isReady(m.group(1))) {
+        return null;
+      }
+      try {
+        sb.append('#').append(referenceDao.getRefsSnapshotId(m.group(1)));
+      } catch (DaoException e) {
+        // Let the controller report the error.
+        return null;
+      }
+    }
+
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-1");
+      byte[] digest = md.digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+      char[] hex = new char[digest.length * 2];
+      for (int i = 0; i < digest.length; i++) {
+        hex[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0x0F];
+        hex[i * 2 + 1] = HEX_DIGITS[digest[i] & 0x0F];
+      }
+      return new String(hex);
+    } catch (NoSuchAlgorithmException e) {
+      LOG.error("SHA-1 is not available.", e);
+      return null;
+    }
+  }
+
+  @Override
+  public boolean supports(
+    MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType
+  ) {
+    return true;
+  }
+
+  @Override
+  public Object beforeBodyWrite(
+    Object body,
+    MethodParameter returnType,
+    MediaType selectedContentType,
+    Class<? extends HttpMessageConverter<?>> selectedConverterType,
+    ServerHttpRequest request,
+    ServerHttpResponse response
+  ) {
+    if (
+      body == null
+      || !(request instanceof ServletServerHttpRequest)
+      || !(response instanceof ServletServerHttpResponse)
+    ) {
+      return body;
+    }
+
+    HttpServletRequest req = ((ServletServerHttpRequest) request).getServletRequest();
+    HttpServletResponse res = ((ServletServerHttpResponse) response).getServletResponse();
+    Object key = req.getAttribute(KEY_ATTR);
+    if (key != null && res.getStatus() == HttpServletResponse.SC_OK) {
+      req.removeAttribute(KEY_ATTR);
+      // Headers of ResponseEntity are not written to res yet.
+      cache.put(
+        (String) key,
+        body,
+        response.getHeaders().getFirst(HttpHeaders.ETAG),
+        response.getHeaders().getFirst(HttpHeaders.CACHE_CONTROL)
+      );
+    }
+    return body;
+  }
+
+  private static final class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buf;
+
+    private ByteBufferInputStream(ByteBuffer buf) {
+      this.buf = buf;
+    }
+
+    @Override
+    public int read() {
+      return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (!buf.hasRemaining()) {
+        return -1;
+      }
+      int n = Math.min(len, buf.remaining());
+      buf.get(b, off, n);
+      return n;
+    }
+
+  }
+
+}
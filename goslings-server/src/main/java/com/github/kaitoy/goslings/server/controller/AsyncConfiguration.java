@@ -0,0 +1,170 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.github.kaitoy.goslings.server.BeanQualifiers;
+import com.github.kaitoy.goslings.server.dao.RepositoryDao;
+
+/**
+ * Configuration of asynchronous processing of the REST API.
+ * DAO calls of {@link RestApiV1Controller} run on two {@link DaoExecutor}s: one for CPU-bound
+ * calls such as history walks, and the other for I/O-bound calls such as clones, so that
+ * slow clones can't starve walks and vice versa. Each executor schedules calls fairly across
+ * repositories. Both executors are keyed by tokens, and publish metrics only for the keys of
+ * repositories which are ready. Identical calls pending at the same time are coalesced
+ * into one unless disabled.
+ * Responses of {@link StreamingApiV1Controller} are written on another bounded executor.
+ *
+ * @author Kaito Yamada
+ */
+@Configuration
+public class AsyncConfiguration extends WebMvcConfigurerAdapter {
+
+  private static final String METRIC_PREFIX = "goslings.executors.";
+
+  @Autowired
+  private MetricRegistry registry;
+
+  @Autowired
+  @Qualifier(BeanQualifiers.DAO_JGIT)
+  private RepositoryDao repositoryDao;
+
+  @Value("${com.github.kaitoy.goslings.server.coalescing.enabled:true}")
+  private boolean coalescing;
+
+  @Value("${com.github.kaitoy.goslings.server.async.timeout:0}")
+  private long timeout;
+
+  @Value("${com.github.kaitoy.goslings.server.async.admissionTimeout:10000}")
+  private long admissionTimeout;
+
+  @Value("${com.github.kaitoy.goslings.server.async.stream.threads:8}")
+  private int streamThreads;
+
+  @Value("${com.github.kaitoy.goslings.server.async.stream.queueCapacity:100}")
+  private int streamQueueCapacity;
+
+  @Override
+  public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+    // 0 means no timeout for Tomcat, which keeps the behavior of synchronous processing.
+    configurer.setDefaultTimeout(timeout);
+    configurer.setTaskExecutor(streamExecutor());
+  }
+
+  /**
+   * @return the executor which writes streaming responses. It rejects writes beyond its
+   *         threads and queue capacity with a subclass of RejectedExecutionException.
+   */
+  @Bean
+  public ThreadPoolTaskExecutor streamExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(streamThreads);
+    executor.setMaxPoolSize(streamThreads);
+    executor.setQueueCapacity(streamQueueCapacity);
+    executor.setThreadNamePrefix("goslings-stream-");
+    executor.setDaemon(true);
+    return executor;
+  }
+
+  /**
+   * @param threads the number of threads. 0 means the number of processors.
+   * @param queueCapacity the maximum number of calls waiting for a thread.
+   * @param perTokenConcurrency the maximum number of calls for a repository running at
+   *        the same time. 0 means half the threads.
+   * @param perTokenQueueCapacity the maximum number of calls for a repository waiting for
+   *        a thread.
+   * @return the executor for CPU-bound DAO calls.
+   */
+  @Bean(destroyMethod = "shutdown")
+  @Qualifier(BeanQualifiers.EXECUTOR_WALK)
+  public DaoExecutor walkExecutor(
+    @Value("${com.github.kaitoy.goslings.server.async.walk.threads:0}") int threads,
+    @Value("${com.github.kaitoy.goslings.server.async.walk.queueCapacity:100}")
+    int queueCapacity,
+    @Value("${com.github.kaitoy.goslings.server.async.walk.perTokenConcurrency:0}")
+    int perTokenConcurrency,
+    @Value("${com.github.kaitoy.goslings.server.async.walk.perTokenQueueCapacity:20}")
+    int perTokenQueueCapacity
+  ) {
+    int numThreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    DaoExecutor executor
+      = new DaoExecutor(
+          BeanQualifiers.EXECUTOR_WALK,
+          numThreads,
+          queueCapacity,
+          perTokenConcurrency > 0 ? perTokenConcurrency : Math.max(1, numThreads / 2),
+          perTokenQueueCapacity,
+          admissionTimeout,
+          false,
+          registry,
+          repositoryDao::isReady,
+          coalescing
+        );
+    registerGauges(executor);
+    return executor;
+  }
+
+  /**
+   * @param threads the number of threads.
+   * @param queueCapacity the maximum number of calls waiting for a thread.
+   * @param perUriQueueCapacity the maximum number of calls for a repository waiting for
+   *        a thread. Calls for a repository run one at a time.
+   * @param virtualThreads whether to run calls on virtual threads if available.
+   * @return the executor for I/O-bound DAO calls.
+   */
+  @Bean(destroyMethod = "shutdown")
+  @Qualifier(BeanQualifiers.EXECUTOR_CLONE)
+  public DaoExecutor cloneExecutor(
+    @Value("${com.github.kaitoy.goslings.server.async.clone.threads:8}") int threads,
+    @Value("${com.github.kaitoy.goslings.server.async.clone.queueCapacity:100}")
+    int queueCapacity,
+    @Value("${com.github.kaitoy.goslings.server.async.clone.perUriQueueCapacity:20}")
+    int perUriQueueCapacity,
+    @Value("${com.github.kaitoy.goslings.server.async.clone.virtualThreads:false}")
+    boolean virtualThreads
+  ) {
+    // A clone of a repository is done only once anyway, so calls for it run one at a time.
+    // Calls for a repository being cloned usually join the pending one instead of queuing.
+    DaoExecutor executor
+      = new DaoExecutor(
+          BeanQualifiers.EXECUTOR_CLONE,
+          threads,
+          queueCapacity,
+          1,
+          perUriQueueCapacity,
+          admissionTimeout,
+          virtualThreads,
+          registry,
+          repositoryDao::isReady,
+          coalescing
+        );
+    registerGauges(executor);
+    return executor;
+  }
+
+  private void registerGauges(DaoExecutor executor) {
+    String prefix = METRIC_PREFIX + executor.getName() + ".";
+    registry.register(prefix + "running", (Gauge<Integer>) executor::getRunningCount);
+    registry.register(prefix + "pending", (Gauge<Integer>) executor::getPendingCount);
+    registry.register(prefix + "rejected", (Gauge<Integer>) executor::getRejectedCount);
+    registry.register(prefix + "coalesced", (Gauge<Long>) executor::getCoalescedCount);
+  }
+
+}
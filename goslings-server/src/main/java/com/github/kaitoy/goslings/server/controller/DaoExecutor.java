@@ -0,0 +1,547 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.controller;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.github.kaitoy.goslings.server.metrics.RequestTimings;
+
+/**
+ * A bounded executor which runs DAO calls off the threads of the servlet container, so that
+ * a slow call (e.g. a history walk or a clone) doesn't hold a container thread until it returns.
+ * <p>
+ * Each call is submitted with a key, which is usually the token of the repository the call
+ * accesses. At most a fixed number of calls run at the same time in total and for each key,
+ * and calls which can't run yet wait in a queue of their key. When a thread becomes free,
+ * the queues are served in round-robin, so that a user hammering a big repository can't
+ * starve users of other repositories.
+ * A call is rejected with {@link ServerBusyException}, whose Retry-After is estimated from
+ * the recent run time of calls with the same key, if:
+ * <ul>
+ * <li>the queue of its key or the queues in total are full,</li>
+ * <li>it's estimated not to start within the admission timeout, or</li>
+ * <li>it actually doesn't start within the admission timeout.</li>
+ * </ul>
+ * <p>
+ * A call can also be submitted with a call key, which identifies what it computes (e.g. an
+ * operation and its normalized parameters). A call submitted while another call with the same
+ * key and call key is pending, i.e. queued or running, isn't admitted at all but joins the
+ * latter and shares its result or exception, so that a burst of identical requests takes
+ * neither queue slots nor threads. Results are shared as they are, so callers must not modify
+ * them.
+ * <p>
+ * The calls run on platform threads of a fixed pool by default. If virtual threads are
+ * requested and the JVM supports them (JDK 21+), each call runs on a new virtual thread instead,
+ * with the same limits.
+ * <p>
+ * {@link RequestTimings} of the submitting thread is carried over to the thread running
+ * the call.
+ * <p>
+ * The number of queued calls and the time calls waited in the queue are published for each key
+ * as goslings.executors.&lt;name&gt;.keys.&lt;key&gt;.&lt;queued|wait&gt;, but only for keys
+ * accepted by the given predicate, so that arbitrary keys sent by clients can't add metrics.
+ * They are removed after the key has been idle for {@value #IDLE_KEY_EXPIRY_MINUTES} minutes.
+ *
+ * @author Kaito Yamada
+ */
+public final class DaoExecutor {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DaoExecutor.class);
+  private static final int IDLE_KEY_EXPIRY_MINUTES = 10;
+  // Weight of the latest run time in the moving average.
+  private static final double RUN_TIME_WEIGHT = 0.2;
+
+  private final String name;
+  private final int threads;
+  private final int queueCapacity;
+  private final int perKeyConcurrency;
+  private final int perKeyQueueCapacity;
+  private final long admissionTimeoutNanos;
+  private final MetricRegistry registry;
+  private final Predicate<String> publishedKeys;
+  private final boolean coalescing;
+  private final ExecutorService executor;
+  private final ScheduledThreadPoolExecutor timer;
+
+  // Guarded by lock.
+  private final Object lock = new Object();
+  private final Map<String, KeyQueue> queues = new HashMap<>();
+  private final ArrayDeque<KeyQueue> readyQueues = new ArrayDeque<>();
+  private int running = 0;
+  private int queued = 0;
+
+  private final AtomicInteger rejected = new AtomicInteger();
+  private final Map<String, CompletableFuture<Object>> pendingCalls = new ConcurrentHashMap<>();
+  private final AtomicLong coalesced = new AtomicLong();
+
+  /**
+   * @param name the name of this executor, which is used for the names of threads and metrics.
+   * @param threads the maximum number of calls running at the same time.
+   * @param queueCapacity the maximum number of calls waiting to run in total.
+   * @param perKeyConcurrency the maximum number of calls with the same key running at
+   *        the same time.
+   * @param perKeyQueueCapacity the maximum number of calls with the same key waiting to run.
+   * @param admissionTimeout the maximum time in milliseconds a call waits to run.
+   * @param virtualThreads whether to run calls on virtual threads if available.
+   * @param registry the registry to register metrics of keys to.
+   * @param publishedKeys the predicate which tests whether to publish metrics of a key. It's
+   *        called with a lock of this executor held, so it must be fast.
+   * @param coalescing whether to let calls join pending ones with the same call key.
+   */
+  public DaoExecutor(
+    String name,
+    int threads,
+    int queueCapacity,
+    int perKeyConcurrency,
+    int perKeyQueueCapacity,
+    long admissionTimeout,
+    boolean virtualThreads,
+    MetricRegistry registry,
+    Predicate<String> publishedKeys,
+    boolean coalescing
+  ) {
+    if (
+         threads <= 0 || queueCapacity < 0 || perKeyConcurrency <= 0
+      || perKeyQueueCapacity < 0 || admissionTimeout <= 0
+    ) {
+      throw new IllegalArgumentException(
+              new StringBuilder()
+                .append("Invalid executor settings. threads: ")
+                .append(threads)
+                .append(", queueCapacity: ")
+                .append(queueCapacity)
+                .append(", perKeyConcurrency: ")
+                .append(perKeyConcurrency)
+                .append(", perKeyQueueCapacity: ")
+                .append(perKeyQueueCapacity)
+                .append(", admissionTimeout: ")
+                .append(admissionTimeout)
+                .toString()
+            );
+    }
+
+    this.name = name;
+    this.threads = threads;
+    this.queueCapacity = queueCapacity;
+    this.perKeyConcurrency = Math.min(perKeyConcurrency, threads);
+    this.perKeyQueueCapacity = perKeyQueueCapacity;
+    this.admissionTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(admissionTimeout);
+    this.registry = registry;
+    this.publishedKeys = publishedKeys;
+    this.coalescing = coalescing;
+
+    ExecutorService virtualThreadExecutor = virtualThreads ? newVirtualThreadExecutor() : null;
+    if (virtualThreadExecutor != null) {
+      LOG.info("The executor {} runs calls on virtual threads.", name);
+      this.executor = virtualThreadExecutor;
+    }
+    else {
+      if (virtualThreads) {
+        LOG.warn("Virtual threads are not available. The executor {} uses a thread pool.", name);
+      }
+      AtomicInteger threadCount = new AtomicInteger();
+      // This never gets more calls than its threads.
+      this.executor
+        = new ThreadPoolExecutor(
+            threads,
+            threads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            r -> {
+              Thread t = new Thread(r, "goslings-" + name + "-" + threadCount.incrementAndGet());
+              t.setDaemon(true);
+              return t;
+            }
+          );
+    }
+
+    this.timer
+      = new ScheduledThreadPoolExecutor(1, r -> {
+          Thread t = new Thread(r, "goslings-" + name + "-timer");
+          t.setDaemon(true);
+          return t;
+        });
+    timer.setRemoveOnCancelPolicy(true);
+    timer.scheduleWithFixedDelay(this::removeIdleKeys, 1, 1, TimeUnit.MINUTES);
+  }
+
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      return (ExecutorService) Executors.class
+                                 .getMethod("newVirtualThreadPerTaskExecutor")
+                                 .invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Submit a call.
+   * The returned future is completed with the exception the call threw as it is, not wrapped
+   * by {@link java.util.concurrent.CompletionException}, so that exception handlers of
+   * controllers can handle it as if the call had been made synchronously.
+   * If the call doesn't start within the admission timeout, the future is completed with
+   * {@link ServerBusyException}.
+   *
+   * @param <T> the type of the result of the call.
+   * @param key the key to schedule the call fairly by, e.g. a token.
+   * @param call call
+   * @return a future of the result of the call. Never null.
+   * @throws ServerBusyException if the call can't be accepted.
+   */
+  public <T> CompletableFuture<T> submit(String key, Supplier<T> call) {
+    return submit(key, null, call);
+  }
+
+  /**
+   * Submit a call, or join a pending call with the same key and call key.
+   * The returned future is completed in the same way as {@link #submit(String, Supplier)}.
+   *
+   * @param <T> the type of the result of the call.
+   * @param key the key to schedule the call fairly by, e.g. a token.
+   * @param callKey the key which identifies what the call computes within the key, e.g.
+   *        an operation and its normalized parameters. If null, the call is never joined.
+   * @param call call
+   * @return a future of the result of the call. Never null.
+   * @throws ServerBusyException if the call can't be accepted.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> CompletableFuture<T> submit(String key, String callKey, Supplier<T> call) {
+    if (!coalescing || callKey == null) {
+      return admit(key, call);
+    }
+
+    String pendingKey
+      = new StringBuilder()
+          .append(key)
+          .append('\n')
+          .append(callKey)
+          .toString();
+    CompletableFuture<Object> shared = new CompletableFuture<>();
+    CompletableFuture<Object> pending = pendingCalls.putIfAbsent(pendingKey, shared);
+    if (pending != null) {
+      coalesced.incrementAndGet();
+      return (CompletableFuture<T>) relay(pending);
+    }
+
+    try {
+      admit(key, call).whenComplete((result, e) -> {
+        // Removed first so that calls submitted after completion compute a fresh result.
+        pendingCalls.remove(pendingKey, shared);
+        if (e != null) {
+          shared.completeExceptionally(e);
+        }
+        else {
+          shared.complete(result);
+        }
+      });
+    } catch (RuntimeException e) {
+      pendingCalls.remove(pendingKey, shared);
+      // Calls which have joined this one are rejected as well.
+      shared.completeExceptionally(e);
+      throw e;
+    }
+    return (CompletableFuture<T>) relay(shared);
+  }
+
+  /*
+   * Give each caller its own future so that one caller can't complete or cancel the shared one.
+   * Not thenApply, which would wrap exceptions in CompletionException.
+   */
+  private static <T> CompletableFuture<T> relay(CompletableFuture<T> source) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    source.whenComplete((result, e) -> {
+      if (e != null) {
+        future.completeExceptionally(e);
+      }
+      else {
+        future.complete(result);
+      }
+    });
+    return future;
+  }
+
+  private <T> CompletableFuture<T> admit(String key, Supplier<T> call) {
+    Task<T> task = new Task<>(call, RequestTimings.current());
+    synchronized (lock) {
+      KeyQueue queue = queues.get(key);
+      if (queue == null) {
+        queue = new KeyQueue(key);
+        queues.put(key, queue);
+      }
+      task.queue = queue;
+      queue.lastUsedTime = System.nanoTime();
+      // A key may be accepted later, e.g. after the repository has been cloned.
+      queue.registerMetrics();
+
+      if (running < threads && queue.running < perKeyConcurrency && queue.tasks.isEmpty()) {
+        start(task);
+        return task.future;
+      }
+
+      long estimatedWait = estimateWait(queue);
+      if (queue.tasks.size() >= perKeyQueueCapacity || queued >= queueCapacity) {
+        throw reject(key, "the queue is full", estimatedWait);
+      }
+      if (estimatedWait > admissionTimeoutNanos) {
+        throw reject(key, "it wouldn't start in time", estimatedWait);
+      }
+
+      queue.tasks.add(task);
+      queued++;
+      if (!queue.ready && queue.running < perKeyConcurrency) {
+        queue.ready = true;
+        readyQueues.add(queue);
+      }
+      task.expiry
+        = timer.schedule(() -> expire(task), admissionTimeoutNanos, TimeUnit.NANOSECONDS);
+      dispatch();
+    }
+    return task.future;
+  }
+
+  // Must be called with lock held.
+  private long estimateWait(KeyQueue queue) {
+    // Calls of the key ahead of the new one, and the running ones, are processed in parallel.
+    int ahead = queue.tasks.size() + queue.running - perKeyConcurrency + 1;
+    return ahead <= 0 ? 0L : (long) (ahead * queue.meanRunTimeNanos / perKeyConcurrency);
+  }
+
+  // Must be called with lock held.
+  private ServerBusyException reject(String key, String reason, long estimatedWait) {
+    rejected.incrementAndGet();
+    LOG.debug("Rejected a call for {} on the executor {} because {}.", key, name, reason);
+    return new ServerBusyException(
+             new StringBuilder()
+               .append("The server is too busy to process requests for ")
+               .append(key)
+               .append(" now. Please retry later.")
+               .toString(),
+             Math.max(1L, TimeUnit.NANOSECONDS.toSeconds(estimatedWait))
+           );
+  }
+
+  // Must be called with lock held.
+  private void dispatch() {
+    while (running < threads && !readyQueues.isEmpty()) {
+      KeyQueue queue = readyQueues.poll();
+      queue.ready = false;
+      Task<?> task = queue.tasks.poll();
+      if (task == null) {
+        continue;
+      }
+      queued--;
+      task.expiry.cancel(false);
+      start(task);
+      if (!queue.tasks.isEmpty() && queue.running < perKeyConcurrency) {
+        queue.ready = true;
+        readyQueues.add(queue);
+      }
+    }
+  }
+
+  // Must be called with lock held.
+  private <T> void start(Task<T> task) {
+    KeyQueue queue = task.queue;
+    running++;
+    queue.running++;
+    long startTime = System.nanoTime();
+    if (queue.waitTimer != null) {
+      queue.waitTimer.update(startTime - task.submittedTime, TimeUnit.NANOSECONDS);
+    }
+    executor.execute(() -> {
+      RequestTimings.bind(task.timings);
+      try {
+        task.future.complete(task.call.get());
+      } catch (Throwable e) {
+        task.future.completeExceptionally(e);
+      } finally {
+        RequestTimings.bind(null);
+        finish(queue, System.nanoTime() - startTime);
+      }
+    });
+  }
+
+  private void finish(KeyQueue queue, long runTime) {
+    synchronized (lock) {
+      running--;
+      queue.running--;
+      queue.lastUsedTime = System.nanoTime();
+      queue.meanRunTimeNanos
+        = queue.meanRunTimeNanos == 0d
+            ? runTime
+            : RUN_TIME_WEIGHT * runTime + (1d - RUN_TIME_WEIGHT) * queue.meanRunTimeNanos;
+      if (!queue.ready && !queue.tasks.isEmpty()) {
+        queue.ready = true;
+        readyQueues.add(queue);
+      }
+      dispatch();
+    }
+  }
+
+  private void expire(Task<?> task) {
+    ServerBusyException e;
+    synchronized (lock) {
+      KeyQueue queue = task.queue;
+      if (!queue.tasks.remove(task)) {
+        // Already started.
+        return;
+      }
+      queued--;
+      if (queue.tasks.isEmpty() && queue.ready) {
+        queue.ready = false;
+        readyQueues.remove(queue);
+      }
+      e = reject(queue.key, "it didn't start in time", estimateWait(queue));
+    }
+    task.future.completeExceptionally(e);
+  }
+
+  private void removeIdleKeys() {
+    long expiry = System.nanoTime() - TimeUnit.MINUTES.toNanos(IDLE_KEY_EXPIRY_MINUTES);
+    synchronized (lock) {
+      for (Iterator<KeyQueue> iter = queues.values().iterator(); iter.hasNext();) {
+        KeyQueue queue = iter.next();
+        if (queue.running == 0 && queue.tasks.isEmpty() && queue.lastUsedTime < expiry) {
+          iter.remove();
+          queue.unregisterMetrics();
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the name of this executor.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the number of calls running.
+   */
+  public int getRunningCount() {
+    synchronized (lock) {
+      return running;
+    }
+  }
+
+  /**
+   * @return the number of calls submitted and not finished, which includes running ones.
+   */
+  public int getPendingCount() {
+    synchronized (lock) {
+      return running + queued;
+    }
+  }
+
+  /**
+   * @return the number of calls rejected so far.
+   */
+  public int getRejectedCount() {
+    return rejected.get();
+  }
+
+  /**
+   * @return the number of calls which have joined pending ones so far.
+   */
+  public long getCoalescedCount() {
+    return coalesced.get();
+  }
+
+  /**
+   * Stop accepting calls. Calls in progress keep running.
+   */
+  public void shutdown() {
+    timer.shutdownNow();
+    executor.shutdown();
+  }
+
+  private static final class Task<T> {
+
+    private final Supplier<T> call;
+    private final RequestTimings timings;
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+    private final long submittedTime = System.nanoTime();
+    private KeyQueue queue;
+    private ScheduledFuture<?> expiry;
+
+    private Task(Supplier<T> call, RequestTimings timings) {
+      this.call = call;
+      this.timings = timings;
+    }
+
+  }
+
+  private final class KeyQueue {
+
+    private final String key;
+    private final ArrayDeque<Task<?>> tasks = new ArrayDeque<>();
+    // null while the metrics are not registered.
+    private String metricPrefix;
+    private Timer waitTimer;
+    private int running = 0;
+    private boolean ready = false;
+    private double meanRunTimeNanos = 0d;
+    private long lastUsedTime;
+
+    private KeyQueue(String key) {
+      this.key = key;
+    }
+
+    // Must be called with lock held.
+    private void registerMetrics() {
+      if (metricPrefix != null || !publishedKeys.test(key)) {
+        return;
+      }
+      metricPrefix = "goslings.executors." + name + ".keys." + key + ".";
+      waitTimer = registry.timer(metricPrefix + "wait");
+      registry.register(metricPrefix + "queued", (Gauge<Integer>) this::getQueuedCount);
+    }
+
+    private int getQueuedCount() {
+      synchronized (lock) {
+        return tasks.size();
+      }
+    }
+
+    private void unregisterMetrics() {
+      if (metricPrefix == null) {
+        return;
+      }
+      registry.remove(metricPrefix + "wait");
+      registry.remove(metricPrefix + "queued");
+    }
+
+  }
+
+}
@@ -9,18 +9,32 @@
 package com.github.kaitoy.goslings.server.controller;
 
 import java.text.SimpleDateFormat;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.util.Calendar;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -34,8 +48,13 @@ import com.github.kaitoy.goslings.server.dao.ObjectDao;
 import com.github.kaitoy.goslings.server.dao.ReferenceDao;
 import com.github.kaitoy.goslings.server.dao.RepositoryDao;
 import com.github.kaitoy.goslings.server.resource.Branch;
+import com.github.kaitoy.goslings.server.resource.BranchComparison;
 import com.github.kaitoy.goslings.server.resource.Commit;
+import com.github.kaitoy.goslings.server.resource.CommitGraph;
+import com.github.kaitoy.goslings.server.resource.CommitMetadata;
+import com.github.kaitoy.goslings.server.resource.FieldSet;
 import com.github.kaitoy.goslings.server.resource.Index;
+import com.github.kaitoy.goslings.server.resource.ObjectContents;
 import com.github.kaitoy.goslings.server.resource.StringWrapper;
 import com.github.kaitoy.goslings.server.resource.SymbolicReference;
 import com.github.kaitoy.goslings.server.resource.Tag;
@@ -43,6 +62,9 @@ import com.github.kaitoy.goslings.server.resource.Tree;
 
 /**
  * REST API v1 Controller
+ * Handlers which may take long return {@link CompletableFuture}s of DAO calls submitted to
+ * {@link DaoExecutor}s, so that they don't hold threads of the servlet container.
+ * When a call can't start in time, they respond with 503 Service Unavailable.
  *
  * @author Kaito Yamada
  */
@@ -55,6 +77,8 @@ public final class RestApiV1Controller {
 
   private static final String URI_PREFIX_PROP = "com.github.kaitoy.goslings.server.uriPrefix";
   private static final String uriPrefix;
+  private static final String OBJECT_ID_PATTERN = "[0-9a-f]{40}";
+  private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
 
   @Autowired
   @Qualifier(BeanQualifiers.DAO_JGIT)
@@ -68,6 +92,23 @@ public final class RestApiV1Controller {
   @Qualifier(BeanQualifiers.DAO_JGIT)
   private ReferenceDao referenceDao;
 
+  @Autowired
+  @Qualifier(BeanQualifiers.EXECUTOR_WALK)
+  private DaoExecutor walkExecutor;
+
+  @Autowired
+  @Qualifier(BeanQualifiers.EXECUTOR_CLONE)
+  private DaoExecutor cloneExecutor;
+
+  @Value("${com.github.kaitoy.goslings.server.commitGraph.minChainLength:2}")
+  private int minChainLength;
+
+  @Value("${com.github.kaitoy.goslings.server.commitMetadata.maxIds:1000}")
+  private int maxCommitMetadataIds;
+
+  @Value("${com.github.kaitoy.goslings.server.objectContents.byteBudget:1048576}")
+  private long objectContentsByteBudget;
+
   static {
     uriPrefix = System.getProperty(URI_PREFIX_PROP);
   }
@@ -79,52 +120,276 @@ public final class RestApiV1Controller {
    * @return a repository token corresponding to a single Git repository. Never null.
    * @throws DaoException if an error occurred in DAO.
    * @throws BadRequestException if uri is invalid.
+   * @throws RejectedExecutionException if the server is too busy.
    */
   @RequestMapping(path="tokens")
-  public StringWrapper getToken(@RequestParam("uri") String uri) {
+  public CompletableFuture<StringWrapper> getToken(@RequestParam("uri") String uri) {
     if (uri == null || uri.isEmpty()) {
       throw new BadRequestException("The required parameter 'uri' is not set.");
     }
     if (uriPrefix != null && !uriPrefix.isEmpty() && !uri.startsWith(uriPrefix)) {
       throw new BadRequestException("URI has to start with " + uriPrefix);
     }
-    return new StringWrapper(repositoryDao.getToken(uri));
+    // Keyed by the token, which doesn't contain credentials in the URI.
+    String token = repositoryDao.computeToken(uri);
+    if (repositoryDao.isReady(token)) {
+      // Cheap enough to answer without a hop to another thread.
+      return CompletableFuture.completedFuture(new StringWrapper(repositoryDao.getToken(uri)));
+    }
+    // Only the first call for the repository takes a slot of the executor, and the others
+    // join it, so that they neither wait in the queue nor time out while it's cloned.
+    return cloneExecutor.submit(
+             token, "tokens", () -> new StringWrapper(repositoryDao.getToken(uri))
+           );
   }
 
   /**
-   * API to get all commits in the repository.
+   * API to get all commits in the repository, or ones committed in a time range.
    *
    * @param token the token that corresponds to the repository.
+   * @param fields a comma separated list of fields of commits to get. (e.g. id,parentIds)
+   *        All the fields if not set.
+   * @param since the start of the time range, inclusive, as an ISO-8601 date (e.g. 2017-01-01)
+   *        in UTC or date-time with an offset (e.g. 2017-01-01T00:00:00+09:00).
+   *        Unbounded if not set.
+   * @param until the end of the time range, exclusive, in the same format as since.
+   *        Unbounded if not set.
    * @return a list of commits. Never null.
    * @throws DaoException if an error occurred in DAO.
+   * @throws BadRequestException if fields, since, or until is invalid.
+   * @throws RejectedExecutionException if the server is too busy.
    */
   @RequestMapping(path="{token}/objects/commits")
-  public Commit[] getCommits(@PathVariable String token) {
-    return objectDao.getCommits(token);
+  public CompletableFuture<Commit[]> getCommits(
+    @PathVariable String token,
+    @RequestParam(name="fields", required=false) String fields,
+    @RequestParam(name="since", required=false) String since,
+    @RequestParam(name="until", required=false) String until
+  ) {
+    FieldSet fieldSet = parseFields(fields, Commit.FIELDS);
+    if (since == null && until == null) {
+      return walkExecutor.submit(
+               token,
+               callKey("objects/commits", fieldSet),
+               () -> objectDao.getCommits(token, fieldSet)
+             );
+    }
+
+    long sinceTime = parseTime("since", since, Long.MIN_VALUE);
+    long untilTime = parseTime("until", until, Long.MAX_VALUE);
+    return walkExecutor.submit(
+             token,
+             callKey(
+               "objects/commits", fieldSet, String.valueOf(sinceTime), String.valueOf(untilTime)
+             ),
+             () -> objectDao.getCommits(token, fieldSet, sinceTime, untilTime)
+           );
+  }
+
+  /**
+   * API to get all commits in the repository with maximal chains of commits which have a single
+   * parent and a single child each collapsed into summaries, which can be expanded by
+   * {@link #getCommitChain(String, String, String, String, WebRequest, HttpServletResponse)}.
+   *
+   * @param token the token that corresponds to the repository.
+   * @param fields a comma separated list of fields of commits to get. (e.g. id,parentIds)
+   *        All the fields if not set.
+   * @param since must not be set.
+   * @param until must not be set.
+   * @return a commit graph. Never null.
+   * @throws DaoException if an error occurred in DAO.
+   * @throws BadRequestException if fields is invalid, or since or until is set.
+   * @throws RejectedExecutionException if the server is too busy.
+   */
+  @RequestMapping(path="{token}/objects/commits", params="collapse=true")
+  public CompletableFuture<CommitGraph> getCommitGraph(
+    @PathVariable String token,
+    @RequestParam(name="fields", required=false) String fields,
+    @RequestParam(name="since", required=false) String since,
+    @RequestParam(name="until", required=false) String until
+  ) {
+    if (since != null || until != null) {
+      throw new BadRequestException("'since' and 'until' can't be used with 'collapse'.");
+    }
+    FieldSet fieldSet = parseFields(fields, Commit.FIELDS);
+    return walkExecutor.submit(
+             token,
+             callKey("objects/commits/graph", fieldSet),
+             () -> objectDao.getCommitGraph(token, fieldSet, minChainLength)
+           );
+  }
+
+  /**
+   * API to get the commits in a chain collapsed by
+   * {@link #getCommitGraph(String, String, String, String)}.
+   *
+   * @param token the token that corresponds to the repository.
+   * @param headId the ID of the newest commit in the chain.
+   * @param tailId the ID of the oldest commit in the chain.
+   * @param fields a comma separated list of fields of commits to get. (e.g. id,parentIds)
+   *        All the fields if not set.
+   * @param req Web request
+   * @return a list of commits from the head to the tail. Never null.
+   * @throws DaoException if an error occurred in DAO.
+   * @throws BadRequestException if fields is invalid.
+   * @throws RejectedExecutionException if the server is too busy.
+   */
+  @RequestMapping(
+    path="{token}/objects/commits/chains/{headId:[0-9a-f]{40}}/{tailId:[0-9a-f]{40}}"
+  )
+  public CompletableFuture<ResponseEntity<Commit[]>> getCommitChain(
+    @PathVariable String token,
+    @PathVariable String headId,
+    @PathVariable String tailId,
+    @RequestParam(name="fields", required=false) String fields,
+    WebRequest req
+  ) {
+    FieldSet fieldSet = parseFields(fields, Commit.FIELDS);
+    String etag
+      = immutableEtag("objects/commits/chains", headId, tailId, fieldSet.toString());
+    return submitImmutable(
+             token,
+             req,
+             etag,
+             etag,
+             () -> objectDao.getCommitChain(token, headId, tailId, fieldSet)
+           );
+  }
+
+  /**
+   * API to get metadata (i.e. author, committer, and message) of commits in a batch.
+   * The commit IDs are given by the ids parameter for GET, or as a JSON array in the request
+   * body for POST, which has no limit on URL length.
+   *
+   * @param token the token that corresponds to the repository.
+   * @param ids object IDs of the commits. (for GET)
+   * @param bodyIds object IDs of the commits. (for POST)
+   * @param maxMessageLength the maximum number of characters of each message. Messages longer
+   *        than it are truncated. No limit if not set.
+   * @param req Web request
+   * @return a list of metadata in the same order as the IDs. Never null.
+   * @throws DaoException if an error occurred in DAO.
+   * @throws BadRequestException if IDs or maxMessageLength is invalid.
+   * @throws RejectedExecutionException if the server is too busy.
+   */
+  @RequestMapping(
+    path="{token}/objects/commits/metadata",
+    method={RequestMethod.GET, RequestMethod.POST}
+  )
+  public CompletableFuture<ResponseEntity<CommitMetadata[]>> getCommitMetadata(
+    @PathVariable String token,
+    @RequestParam(name="ids", required=false) String[] ids,
+    @RequestBody(required=false) String[] bodyIds,
+    @RequestParam(name="maxMessageLength", required=false) Integer maxMessageLength,
+    WebRequest req
+  ) {
+    String[] objectIds = ids != null ? ids : bodyIds;
+    if (objectIds == null || objectIds.length == 0) {
+      throw new BadRequestException("No commit IDs are given.");
+    }
+    if (objectIds.length > maxCommitMetadataIds) {
+      throw new BadRequestException(
+              new StringBuilder()
+                .append("Too many commit IDs. The maximum is ")
+                .append(maxCommitMetadataIds)
+                .append(".")
+                .toString()
+            );
+    }
+    for (String objectId: objectIds) {
+      if (objectId == null || !objectId.matches(OBJECT_ID_PATTERN)) {
+        throw new BadRequestException("Invalid commit ID: " + objectId);
+      }
+    }
+    if (maxMessageLength != null && maxMessageLength < 0) {
+      throw new BadRequestException("maxMessageLength must not be negative.");
+    }
+    int maxLength = maxMessageLength != null ? maxMessageLength : -1;
+    String etag
+      = immutableEtag(
+          "commits/metadata", String.join(",", objectIds), String.valueOf(maxLength)
+        );
+    // Only GET responses are cacheable.
+    return submitImmutable(
+             token,
+             req,
+             ids != null ? etag : null,
+             etag,
+             () -> objectDao.getCommitMetadata(token, objectIds, maxLength)
+           );
   }
 
   /**
    * API to get all branches in the repository.
    *
    * @param token the token that corresponds to the repository.
+   * @param fields a comma separated list of fields of branches to get. (e.g. name)
+   *        All the fields if not set.
    * @return a list of branches. Never null.
    * @throws DaoException if an error occurred in DAO.
+   * @throws BadRequestException if fields is invalid.
+   * @throws RejectedExecutionException if the server is too busy.
    */
   @RequestMapping(path="{token}/refs/branches")
-  public Branch[] getBranches(@PathVariable String token) {
-    return referenceDao.getBranches(token);
+  public CompletableFuture<Branch[]> getBranches(
+    @PathVariable String token,
+    @RequestParam(name="fields", required=false) String fields
+  ) {
+    FieldSet fieldSet = parseFields(fields, Branch.FIELDS);
+    return walkExecutor.submit(
+             token,
+             callKey("refs/branches", fieldSet),
+             () -> referenceDao.getBranches(token, fieldSet)
+           );
+  }
+
+  /**
+   * API to compare all branches in the repository with a base branch.
+   *
+   * @param token the token that corresponds to the repository.
+   * @param base the name of the base branch. (e.g. master)
+   * @return a list of comparisons. Never null.
+   * @throws DaoException if an error occurred in DAO.
+   * @throws BadRequestException if base is invalid.
+   * @throws RejectedExecutionException if the server is too busy.
+   */
+  @RequestMapping(path="{token}/refs/branches/comparisons")
+  public CompletableFuture<BranchComparison[]> compareBranches(
+    @PathVariable String token,
+    @RequestParam("base") String base
+  ) {
+    if (base == null || base.isEmpty()) {
+      throw new BadRequestException("The required parameter 'base' is not set.");
+    }
+    return walkExecutor.submit(
+             token,
+             callKey("refs/branches/comparisons", base),
+             () -> referenceDao.compareBranches(token, base)
+           );
   }
 
   /**
    * API to get all tags in the repository.
    *
    * @param token the token that corresponds to the repository.
+   * @param fields a comma separated list of fields of tags to get. (e.g. name)
+   *        All the fields if not set.
    * @return a list of tags. Never null.
    * @throws DaoException if an error occurred in DAO.
+   * @throws BadRequestException if fields is invalid.
+   * @throws RejectedExecutionException if the server is too busy.
    */
   @RequestMapping(path="{token}/refs/tags")
-  public Tag[] getTags(@PathVariable String token) {
-    return referenceDao.getTags(token);
+  public CompletableFuture<Tag[]> getTags(
+    @PathVariable String token,
+    @RequestParam(name="fields", required=false) String fields
+  ) {
+    FieldSet fieldSet = parseFields(fields, Tag.FIELDS);
+    return walkExecutor.submit(
+             token,
+             callKey("refs/tags", fieldSet),
+             () -> referenceDao.getTags(token, fieldSet)
+           );
   }
 
   /**
@@ -144,25 +409,59 @@ public final class RestApiV1Controller {
    *
    * @param token the token that corresponds to the repository.
    * @param objectId object ID
-   * @param req HTTP request
-   * @param res HTTP response
+   * @param req Web request
    * @return contents of the object. Never null.
    * @throws DaoException if an error occurred in DAO.
+   * @throws RejectedExecutionException if the server is too busy.
    */
   @RequestMapping(path="{token}/objects/{objectId:[0-9a-f]{40}}/contents")
-  public StringWrapper getObjectContents(
+  public CompletableFuture<ResponseEntity<StringWrapper>> getObjectContents(
     @PathVariable String token,
     @PathVariable String objectId,
-    HttpServletRequest req,
-    HttpServletResponse res
+    WebRequest req
   ) {
-    res.setHeader("Cache-Control", "public");
-    res.setHeader("ETag", objectId);
-    if (req.getHeader("if-none-match") != null) {
-      res.setStatus(HttpStatus.NOT_MODIFIED.value());
-      return null;
-    }
-    return new StringWrapper(objectDao.getContents(token, objectId));
+    // The object ID itself is the ETag for compatibility with the clients which have cached
+    // responses with it.
+    return submitImmutable(
+             token,
+             req,
+             objectId,
+             objectId,
+             () -> new StringWrapper(objectDao.getContents(token, objectId))
+           );
+  }
+
+  /**
+   * API to get contents of Git objects in a batch.
+   * Contents of objects which exceed the byte budget of a response are omitted and have to be
+   * got by another request.
+   *
+   * @param token the token that corresponds to the repository.
+   * @param objectIds object IDs
+   * @param req Web request
+   * @return a list of contents in the same order as objectIds. Never null.
+   * @throws DaoException if an error occurred in DAO.
+   * @throws RejectedExecutionException if the server is too busy.
+   */
+  @RequestMapping(path="{token}/objects/contents/{objectIds:[0-9a-f]{40}(?:,[0-9a-f]{40})*}")
+  public CompletableFuture<ResponseEntity<ObjectContents[]>> getObjectContentsBatch(
+    @PathVariable String token,
+    @PathVariable String[] objectIds,
+    WebRequest req
+  ) {
+    String etag
+      = immutableEtag(
+          "objects/contents",
+          String.join(",", objectIds),
+          String.valueOf(objectContentsByteBudget)
+        );
+    return submitImmutable(
+             token,
+             req,
+             etag,
+             etag,
+             () -> objectDao.getContents(token, objectIds, objectContentsByteBudget)
+           );
   }
 
   /**
@@ -209,12 +508,24 @@ public final class RestApiV1Controller {
    * API to get the index of the repository.
    *
    * @param token the token that corresponds to the repository.
+   * @param fields a comma separated list of fields of index entries to get. (e.g. id,path)
+   *        All the fields if not set.
    * @return index. Never null.
    * @throws DaoException if an error occurred in DAO.
+   * @throws BadRequestException if fields is invalid.
+   * @throws RejectedExecutionException if the server is too busy.
    */
   @RequestMapping(path="{token}/index")
-  public Index getIndex(@PathVariable String token) {
-    return repositoryDao.getIndex(token);
+  public CompletableFuture<Index> getIndex(
+    @PathVariable String token,
+    @RequestParam(name="fields", required=false) String fields
+  ) {
+    FieldSet fieldSet = parseFields(fields, Index.IndexEntry.FIELDS);
+    return walkExecutor.submit(
+             token,
+             callKey("index", fieldSet),
+             () -> repositoryDao.getIndex(token, fieldSet)
+           );
   }
 
   /**
@@ -225,9 +536,10 @@ public final class RestApiV1Controller {
    * @param res HTTP response
    * @return contents of the index. Never null.
    * @throws DaoException if an error occurred in DAO.
+   * @throws RejectedExecutionException if the server is too busy.
    */
   @RequestMapping(path="{token}/index/contents")
-  public StringWrapper getIndexContents(
+  public CompletableFuture<StringWrapper> getIndexContents(
     @PathVariable String token,
     WebRequest req,
     HttpServletResponse res
@@ -239,9 +551,13 @@ public final class RestApiV1Controller {
     res.setHeader("Expires", sdf.format(calendar.getTime()));
     res.setHeader("Cache-Control", "max-age=0");
     if (req.checkNotModified(repositoryDao.getIndexLastModified(token))) {
-      return null;
+      return CompletableFuture.completedFuture(null);
     }
-    return new StringWrapper(repositoryDao.getIndexContents(token));
+    return walkExecutor.submit(
+             token,
+             "index/contents",
+             () -> new StringWrapper(repositoryDao.getIndexContents(token))
+           );
   }
 
   /**
@@ -249,12 +565,160 @@ public final class RestApiV1Controller {
    *
    * @param token the token that corresponds to the repository.
    * @param objectIds object IDs
+   * @param fields a comma separated list of fields of trees to get. (e.g. id,trees)
+   *        All the fields if not set.
+   * @param req Web request
    * @return a list of tree objects. Never null.
    * @throws DaoException if an error occurred in DAO.
+   * @throws BadRequestException if fields is invalid.
+   * @throws RejectedExecutionException if the server is too busy.
    */
   @RequestMapping(path="{token}/objects/trees/{objectIds:[0-9a-f]{40}(?:,[0-9a-f]{40})*}")
-  public Tree[] getTree(@PathVariable String token, @PathVariable String[] objectIds) {
-    return objectDao.getTrees(token, objectIds);
+  public CompletableFuture<ResponseEntity<Tree[]>> getTree(
+    @PathVariable String token,
+    @PathVariable String[] objectIds,
+    @RequestParam(name="fields", required=false) String fields,
+    WebRequest req
+  ) {
+    FieldSet fieldSet = parseFields(fields, Tree.FIELDS);
+    String etag
+      = immutableEtag("objects/trees", String.join(",", objectIds), fieldSet.toString());
+    return submitImmutable(
+             token,
+             req,
+             etag,
+             etag,
+             () -> objectDao.getTrees(token, objectIds, fieldSet)
+           );
+  }
+
+  /**
+   * Submit a DAO call whose response depends only on Git objects addressed by their IDs, and so
+   * never changes, unless the client already has the response cached.
+   * The caching headers are set only to a successful response, so that errors are never cached.
+   *
+   * @param <T> the type of the response body.
+   * @param token the token that corresponds to the repository.
+   * @param req Web request
+   * @param etag the ETag of the response, or null if the response is not cacheable.
+   * @param callKey the key to coalesce identical calls by. See {@link #callKey(String, Object...)}.
+   * @param call the DAO call.
+   * @return a future of the response. Never null.
+   * @throws RejectedExecutionException if the server is too busy.
+   */
+  private <T> CompletableFuture<ResponseEntity<T>> submitImmutable(
+    String token, WebRequest req, String etag, String callKey, Supplier<T> call
+  ) {
+    if (etag != null && isNotModified(req, etag)) {
+      return CompletableFuture.completedFuture(
+               ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                 .header(HttpHeaders.CACHE_CONTROL, IMMUTABLE_CACHE_CONTROL)
+                 .eTag(etag)
+                 .build()
+             );
+    }
+
+    // Not thenApply, which would wrap exceptions of the call in CompletionException.
+    CompletableFuture<ResponseEntity<T>> response = new CompletableFuture<>();
+    walkExecutor.submit(token, callKey, call).whenComplete((body, e) -> {
+      if (e != null) {
+        response.completeExceptionally(e);
+        return;
+      }
+      ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+      if (etag != null) {
+        builder.header(HttpHeaders.CACHE_CONTROL, IMMUTABLE_CACHE_CONTROL).eTag(etag);
+      }
+      response.complete(builder.body(body));
+    });
+    return response;
+  }
+
+  /**
+   * Build a key which identifies a DAO call on a repository, so that identical calls pending
+   * at the same time are coalesced by {@link DaoExecutor}.
+   * Field sets are normalized by sorting their names, since their order doesn't matter.
+   *
+   * @param operation the API, e.g. refs/branches.
+   * @param params the parameters of the call other than the token.
+   * @return the key. Never null.
+   */
+  private static String callKey(String operation, Object... params) {
+    StringBuilder sb = new StringBuilder(operation);
+    for (Object param: params) {
+      sb.append(';');
+      if (param instanceof FieldSet) {
+        sb.append(String.join(",", new TreeSet<>(((FieldSet) param).getNames())));
+      }
+      else {
+        sb.append(param);
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @param keys everything a response depends on, e.g. the API and object IDs.
+   * @return the ETag of the response. Never null.
+   */
+  private String immutableEtag(String... keys) {
+    return DigestUtils.md5DigestAsHex(String.join(";", keys).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Check the If-None-Match header of a request without setting any headers to the response,
+   * unlike {@link WebRequest#checkNotModified(String)}.
+   *
+   * @param req Web request
+   * @param etag the ETag of the response, which is not quoted.
+   * @return true if the client has the response cached; false otherwise.
+   */
+  private boolean isNotModified(WebRequest req, String etag) {
+    String ifNoneMatch = req.getHeader(HttpHeaders.IF_NONE_MATCH);
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    String quotedEtag = "\"" + etag + "\"";
+    for (String candidate: ifNoneMatch.split(",")) {
+      candidate = candidate.trim();
+      if (candidate.startsWith("W/")) {
+        candidate = candidate.substring(2);
+      }
+      if (candidate.equals("*") || candidate.equals(quotedEtag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private long parseTime(String name, String value, long defaultValue) {
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      if (value.indexOf('T') < 0) {
+        return LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+      }
+      return OffsetDateTime.parse(value).toEpochSecond();
+    } catch (DateTimeParseException e) {
+      throw new BadRequestException(
+              new StringBuilder()
+                .append("Invalid '")
+                .append(name)
+                .append("': ")
+                .append(value)
+                .append(". It must be an ISO-8601 date or date-time with an offset.")
+                .toString()
+            );
+    }
+  }
+
+  private FieldSet parseFields(String fields, FieldSet available) {
+    try {
+      return FieldSet.parse(fields, available);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestException(e.getMessage());
+    }
   }
 
   @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -269,4 +733,15 @@ public final class RestApiV1Controller {
     return new ErrorInfo(req.getRequestURL().toString(), ex);
   }
 
+  @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+  @ExceptionHandler(RejectedExecutionException.class)
+  ErrorInfo handleRejectedExecutionException(
+    HttpServletRequest req, HttpServletResponse res, Exception ex
+  ) {
+    long retryAfter
+      = ex instanceof ServerBusyException ? ((ServerBusyException) ex).getRetryAfter() : 1L;
+    res.setHeader("Retry-After", String.valueOf(retryAfter));
+    return new ErrorInfo(req.getRequestURL().toString(), ex);
+  }
+
 }
@@ -0,0 +1,46 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.controller;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * This is thrown if the server can't start processing a request in time and handled by
+ * an exception handler, which responds with 503 Service Unavailable and Retry-After.
+ * The message in this instance is supposed to be for users and is sent to client using
+ * {@link ErrorInfo}.
+ *
+ * @author Kaito Yamada
+ */
+public final class ServerBusyException extends RejectedExecutionException {
+
+  /**
+   *
+   */
+  private static final long serialVersionUID = -2960436395180766146L;
+
+  private final long retryAfter;
+
+  /**
+   * @param message an error message for users.
+   * @param retryAfter the time in seconds after which the client should retry.
+   */
+  public ServerBusyException(String message, long retryAfter) {
+    super(message);
+    this.retryAfter = retryAfter;
+  }
+
+  /**
+   * @return the time in seconds after which the client should retry.
+   */
+  public long getRetryAfter() {
+    return retryAfter;
+  }
+
+}
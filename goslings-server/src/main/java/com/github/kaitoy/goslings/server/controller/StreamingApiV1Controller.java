@@ -0,0 +1,151 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.controller;
+
+import java.util.Iterator;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.kaitoy.goslings.server.BeanQualifiers;
+import com.github.kaitoy.goslings.server.dao.DaoException;
+import com.github.kaitoy.goslings.server.dao.ObjectDao;
+import com.github.kaitoy.goslings.server.dao.RepositoryDao;
+
+/**
+ * Streaming REST API v1 Controller
+ * This serves commits, tree entries, and index entries as JSON arrays which are written while
+ * they are read from the repository, instead of being built in memory as a whole.
+ * The writes block while a slow client doesn't read the response, and so does the read from
+ * the repository, which bounds the memory used for each response regardless of its size.
+ * Responses are written on the task executor of Spring MVC for async requests, which is
+ * configured in {@link AsyncConfiguration}.
+ *
+ * @author Kaito Yamada
+ */
+@RestController
+@RequestMapping(
+  path=StreamingApiV1Controller.PATH,
+  method=RequestMethod.GET
+)
+@ConditionalOnProperty(name="com.github.kaitoy.goslings.server.streaming.enabled")
+public final class StreamingApiV1Controller {
+
+  /**
+   * The path this controller serves.
+   */
+  public static final String PATH = "/v1/stream";
+
+  @Autowired
+  @Qualifier(BeanQualifiers.DAO_JGIT)
+  private RepositoryDao repositoryDao;
+
+  @Autowired
+  @Qualifier(BeanQualifiers.DAO_JGIT)
+  private ObjectDao objectDao;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  /**
+   * API to stream all commits in the repository.
+   *
+   * @param token the token that corresponds to the repository.
+   * @return a JSON array of commits. Never null.
+   * @throws DaoException if an error occurred in DAO.
+   */
+  @RequestMapping(path="{token}/objects/commits")
+  public ResponseEntity<StreamingResponseBody> streamCommits(@PathVariable String token) {
+    return writeArray(objectDao.streamCommits(token));
+  }
+
+  /**
+   * API to stream entries of a tree object.
+   *
+   * @param token the token that corresponds to the repository.
+   * @param objectId the object ID of the tree.
+   * @param recursive whether to list files in subtrees instead of the subtrees themselves.
+   * @return a JSON array of tree entries. Never null.
+   * @throws DaoException if an error occurred in DAO.
+   */
+  @RequestMapping(path="{token}/objects/trees/{objectId:[0-9a-f]{40}}/entries")
+  public ResponseEntity<StreamingResponseBody> streamTreeEntries(
+    @PathVariable String token,
+    @PathVariable String objectId,
+    @RequestParam(name="recursive", defaultValue="false") boolean recursive
+  ) {
+    return writeArray(objectDao.streamTreeEntries(token, objectId, recursive));
+  }
+
+  /**
+   * API to stream entries of the index of the repository.
+   *
+   * @param token the token that corresponds to the repository.
+   * @return a JSON array of index entries. Never null.
+   * @throws DaoException if an error occurred in DAO.
+   */
+  @RequestMapping(path="{token}/index/entries")
+  public ResponseEntity<StreamingResponseBody> streamIndexEntries(@PathVariable String token) {
+    return writeArray(repositoryDao.streamIndexEntries(token));
+  }
+
+  private ResponseEntity<StreamingResponseBody> writeArray(Stream<?> elements) {
+    StreamingResponseBody body = out -> {
+      try (
+        Stream<?> stream = elements;
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out)
+      ) {
+        // Let Spring MVC flush and close the response.
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.writeStartArray();
+        Iterator<?> iter = stream.iterator();
+        while (iter.hasNext()) {
+          generator.writeObject(iter.next());
+        }
+        generator.writeEndArray();
+      }
+    };
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(body);
+  }
+
+  @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
+  @ExceptionHandler(DaoException.class)
+  ErrorInfo handleDaoException(HttpServletRequest req, Exception ex) {
+    return new ErrorInfo(req.getRequestURL().toString(), ex);
+  }
+
+  @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+  @ExceptionHandler(RejectedExecutionException.class)
+  ErrorInfo handleRejectedExecutionException(
+    HttpServletRequest req, HttpServletResponse res, Exception ex
+  ) {
+    res.setHeader("Retry-After", "1");
+    return new ErrorInfo(req.getRequestURL().toString(), ex);
+  }
+
+}
@@ -8,7 +8,14 @@
 
 package com.github.kaitoy.goslings.server.dao;
 
+import java.util.stream.Stream;
+
 import com.github.kaitoy.goslings.server.resource.Commit;
+import com.github.kaitoy.goslings.server.resource.CommitChain;
+import com.github.kaitoy.goslings.server.resource.CommitGraph;
+import com.github.kaitoy.goslings.server.resource.CommitMetadata;
+import com.github.kaitoy.goslings.server.resource.ObjectContents;
+import com.github.kaitoy.goslings.server.resource.FieldSet;
 import com.github.kaitoy.goslings.server.resource.Tree;
 
 /**
@@ -27,6 +34,87 @@ public interface ObjectDao {
    */
   public Commit[] getCommits(String token) throws DaoException;
 
+  /**
+   * Get all commits in the repository with only the specified fields.
+   *
+   * @param token the token that corresponds to the repository.
+   * @param fields the fields of commits to get. See {@link Commit#FIELDS}.
+   * @return a list of commits. Never null.
+   * @throws DaoException if any errors.
+   */
+  public Commit[] getCommits(String token, FieldSet fields) throws DaoException;
+
+  /**
+   * Get commits in the repository committed in a time range, newest first.
+   * This finds them from an index of commit times, which is built on the first call for
+   * the repository and updated as refs are updated.
+   *
+   * @param token the token that corresponds to the repository.
+   * @param fields the fields of commits to get. See {@link Commit#FIELDS}.
+   * @param since the start of the range in seconds since the epoch, inclusive.
+   * @param until the end of the range in seconds since the epoch, exclusive.
+   * @return a list of commits. Never null.
+   * @throws DaoException if any errors.
+   */
+  public Commit[] getCommits(
+    String token, FieldSet fields, long since, long until
+  ) throws DaoException;
+
+  /**
+   * Get all commits in the repository with maximal chains of commits which have a single
+   * parent and a single child each collapsed into {@link CommitChain}s.
+   * Commits which refs point to are never collapsed.
+   *
+   * @param token the token that corresponds to the repository.
+   * @param fields the fields of commits to get. See {@link Commit#FIELDS}.
+   * @param minChainLength the minimum number of commits in a chain to collapse.
+   * @return a commit graph. Never null.
+   * @throws DaoException if any errors.
+   */
+  public CommitGraph getCommitGraph(
+    String token, FieldSet fields, int minChainLength
+  ) throws DaoException;
+
+  /**
+   * Get the commits in a chain, i.e. the commit headId and its first parent and so on down to
+   * the commit tailId.
+   *
+   * @param token the token that corresponds to the repository.
+   * @param headId the ID of the newest commit in the chain.
+   * @param tailId the ID of the oldest commit in the chain.
+   * @param fields the fields of commits to get. See {@link Commit#FIELDS}.
+   * @return a list of commits from the head to the tail. Never null.
+   * @throws DaoException if any errors, including when tailId can't be reached from headId
+   *         through commits which have a single parent.
+   */
+  public Commit[] getCommitChain(
+    String token, String headId, String tailId, FieldSet fields
+  ) throws DaoException;
+
+  /**
+   * Get metadata of commits.
+   *
+   * @param token the token that corresponds to the repository.
+   * @param objectIds object IDs of the commits.
+   * @param maxMessageLength the maximum number of characters of each message. Messages longer
+   *        than it are truncated. A negative value means no limit.
+   * @return a list of metadata in the same order as objectIds. Never null.
+   * @throws DaoException if any errors.
+   */
+  public CommitMetadata[] getCommitMetadata(
+    String token, String[] objectIds, int maxMessageLength
+  ) throws DaoException;
+
+  /**
+   * Get all commits in the repository as a lazy stream, which walks commits as they are
+   * consumed. The stream must be closed to release resources.
+   *
+   * @param token the token that corresponds to the repository.
+   * @return a stream of commits. Never null.
+   * @throws DaoException if any errors, including ones while consuming the stream.
+   */
+  public Stream<Commit> streamCommits(String token) throws DaoException;
+
   /**
    * Get tree objects.
    * @param token the token that corresponds to the repository.
@@ -36,6 +124,33 @@ public interface ObjectDao {
    */
   public Tree[] getTrees(String token, String[] objectIds) throws DaoException;
 
+  /**
+   * Get tree objects with only the specified fields.
+   *
+   * @param token the token that corresponds to the repository.
+   * @param objectIds object IDs.
+   * @param fields the fields of trees to get. See {@link Tree#FIELDS}.
+   * @return a list of tree objects. Never null.
+   * @throws DaoException if any errors.
+   */
+  public Tree[] getTrees(
+    String token, String[] objectIds, FieldSet fields
+  ) throws DaoException;
+
+  /**
+   * Get entries of a tree object as a lazy stream, which reads trees as they are consumed.
+   * The stream must be closed to release resources.
+   *
+   * @param token the token that corresponds to the repository.
+   * @param objectId the object ID of the tree.
+   * @param recursive whether to list files in subtrees instead of the subtrees themselves.
+   * @return a stream of entries. Never null.
+   * @throws DaoException if any errors, including ones while consuming the stream.
+   */
+  public Stream<Tree.TreeEntry> streamTreeEntries(
+    String token, String objectId, boolean recursive
+  ) throws DaoException;
+
   /**
    * Get contents of the specified Git object in the specified repository.
    *
@@ -46,4 +161,19 @@ public interface ObjectDao {
    */
   public String getContents(String token, String objectId) throws DaoException;
 
+  /**
+   * Get contents of the specified Git objects in the specified repository.
+   * The objects are read through a single reader in the order they are stored.
+   *
+   * @param token the token that corresponds to the repository.
+   * @param objectIds object IDs.
+   * @param byteBudget the maximum total size in bytes of the objects to read. Contents of
+   *        objects which don't fit in the remaining budget are omitted.
+   * @return a list of contents in the same order as objectIds. Never null.
+   * @throws DaoException if any errors.
+   */
+  public ObjectContents[] getContents(
+    String token, String[] objectIds, long byteBudget
+  ) throws DaoException;
+
 }
@@ -9,6 +9,8 @@
 package com.github.kaitoy.goslings.server.dao;
 
 import com.github.kaitoy.goslings.server.resource.Branch;
+import com.github.kaitoy.goslings.server.resource.BranchComparison;
+import com.github.kaitoy.goslings.server.resource.FieldSet;
 import com.github.kaitoy.goslings.server.resource.SymbolicReference;
 import com.github.kaitoy.goslings.server.resource.Tag;
 
@@ -28,6 +30,26 @@ public interface ReferenceDao {
    */
   public Branch[] getBranches(String token) throws DaoException;
 
+  /**
+   * Get all branches in the repository with only the specified fields.
+   *
+   * @param token the token that corresponds to the repository.
+   * @param fields the fields of branches to get. See {@link Branch#FIELDS}.
+   * @return a list of branches. Never null.
+   * @throws DaoException if any errors.
+   */
+  public Branch[] getBranches(String token, FieldSet fields) throws DaoException;
+
+  /**
+   * Compare all branches in the repository with the base branch.
+   *
+   * @param token the token that corresponds to the repository.
+   * @param baseName the name of the base branch. (e.g. master, refs/heads/master, etc.)
+   * @return a list of comparisons. Never null.
+   * @throws DaoException if any errors.
+   */
+  public BranchComparison[] compareBranches(String token, String baseName) throws DaoException;
+
   /**
    * Get all tags in the repository.
    *
@@ -37,6 +59,27 @@ public interface ReferenceDao {
    */
   public Tag[] getTags(String token) throws DaoException;
 
+  /**
+   * Get all tags in the repository with only the specified fields.
+   * Tags are peeled only if tagObjectId or referentId is requested.
+   *
+   * @param token the token that corresponds to the repository.
+   * @param fields the fields of tags to get. See {@link Tag#FIELDS}.
+   * @return a list of tags. Never null.
+   * @throws DaoException if any errors.
+   */
+  public Tag[] getTags(String token, FieldSet fields) throws DaoException;
+
+  /**
+   * Get an ID of the current state of all the refs in the repository, which changes whenever
+   * any ref is created, deleted, or updated.
+   *
+   * @param token the token that corresponds to the repository.
+   * @return a snapshot ID. Never null.
+   * @throws DaoException if any errors.
+   */
+  public String getRefsSnapshotId(String token) throws DaoException;
+
   /**
    * Get HEAD, ORIG_HEAD, FETCH_HEAD, and MERGE_HEAD in the repository.
    *
@@ -8,7 +8,11 @@
 
 package com.github.kaitoy.goslings.server.dao;
 
+import java.util.stream.Stream;
+
+import com.github.kaitoy.goslings.server.resource.FieldSet;
 import com.github.kaitoy.goslings.server.resource.Index;
+import com.github.kaitoy.goslings.server.resource.Index.IndexEntry;
 
 /**
  * DAO to handle Git repository itself.
@@ -29,6 +33,24 @@ public interface RepositoryDao {
    */
   public String getToken(String uri) throws DaoException;
 
+  /**
+   * Compute the token for the repository at the given URI without preparing the repository.
+   * Credentials in the URI don't affect the token.
+   *
+   * @param uri URI of the repository
+   * @return token. Never null.
+   * @throws DaoException if any errors.
+   */
+  public String computeToken(String uri) throws DaoException;
+
+  /**
+   * @param token a token.
+   * @return true if the repository corresponding to the token is ready to access via DAOs;
+   *         false otherwise.
+   * @throws DaoException if any errors.
+   */
+  public boolean isReady(String token) throws DaoException;
+
   /**
    * Get the time that the index in the repository was last modified.
    *
@@ -48,6 +70,26 @@ public interface RepositoryDao {
    */
   public Index getIndex(String token) throws DaoException;
 
+  /**
+   * Get the index of the repository with only the specified fields of its entries.
+   *
+   * @param token the token that corresponds to the repository.
+   * @param fields the fields of index entries to get. See {@link IndexEntry#FIELDS}.
+   * @return index. Never null.
+   * @throws DaoException if any errors.
+   */
+  public Index getIndex(String token, FieldSet fields) throws DaoException;
+
+  /**
+   * Get entries of the index of the repository as a lazy stream.
+   * The stream must be closed to release resources.
+   *
+   * @param token the token that corresponds to the repository.
+   * @return a stream of index entries. Never null.
+   * @throws DaoException if any errors.
+   */
+  public Stream<IndexEntry> streamIndexEntries(String token) throws DaoException;
+
   /**
    * Get contents of the index of the repository.
    *
@@ -0,0 +1,227 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.dao.jgit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * An index of all the commits in a repository sorted by their commit times, which finds
+ * commits committed in a time range by binary search instead of walking the whole history.
+ * An instance is immutable and remembers the refs it was built from. When the refs have been
+ * updated, {@link #update(CommitTimeIndex, Repository)} makes a new instance by walking only
+ * the new commits if all the refs have just moved forward, or by walking all the commits
+ * otherwise.
+ * Commits are held as raw IDs in a single array to keep the index compact.
+ *
+ * @author Kaito Yamada
+ */
+final class CommitTimeIndex {
+
+  private static final int RAW_ID_LENGTH = Constants.OBJECT_ID_LENGTH;
+
+  /*
+   * Mapping from ref names to the commits they point to.
+   */
+  private final Map<String, ObjectId> tips;
+  private final int[] times;
+  private final byte[] rawIds;
+
+  private CommitTimeIndex(Map<String, ObjectId> tips, int[] times, byte[] rawIds) {
+    this.tips = tips;
+    this.times = times;
+    this.rawIds = rawIds;
+  }
+
+  /**
+   * @param index the current index of the repository. Maybe null.
+   * @param repo the repository.
+   * @return index if the refs haven't been updated since it was built; a new index otherwise.
+   *         Never null.
+   * @throws IOException if failed to read the repository.
+   */
+  static CommitTimeIndex update(CommitTimeIndex index, Repository repo) throws IOException {
+    try (RevWalk walk = new RevWalk(repo)) {
+      // Parents and commit times are parsed into RevCommits, so the messages are never needed.
+      walk.setRetainBody(false);
+      Map<String, ObjectId> tips = readTips(repo, walk);
+      if (index != null && index.tips.equals(tips)) {
+        return index;
+      }
+
+      boolean incremental = index != null && isFastForward(walk, index.tips, tips);
+      walk.reset();
+      for (ObjectId tip: new HashSet<>(tips.values())) {
+        walk.markStart(walk.parseCommit(tip));
+      }
+      if (incremental) {
+        for (ObjectId tip: new HashSet<>(index.tips.values())) {
+          walk.markUninteresting(walk.parseCommit(tip));
+        }
+      }
+
+      List<RevCommit> commits = new ArrayList<>();
+      for (RevCommit commit: walk) {
+        commits.add(commit);
+      }
+      commits.sort(Comparator.comparingInt(RevCommit::getCommitTime));
+      return incremental ? index.merge(tips, commits) : build(tips, commits);
+    }
+  }
+
+  private static Map<String, ObjectId> readTips(
+    Repository repo, RevWalk walk
+  ) throws IOException {
+    Map<String, ObjectId> tips = new HashMap<>();
+    for (Ref ref: repo.getRefDatabase().getRefs()) {
+      if (ref.getObjectId() == null) {
+        continue;
+      }
+      RevObject obj = walk.peel(walk.parseAny(ref.getObjectId()));
+      if (obj instanceof RevCommit) {
+        tips.put(ref.getName(), obj.copy());
+      }
+    }
+    return tips;
+  }
+
+  /**
+   * @return true if no refs have been removed and all the updated refs point to descendants of
+   *         the commits they pointed to; false otherwise.
+   */
+  private static boolean isFastForward(
+    RevWalk walk, Map<String, ObjectId> oldTips, Map<String, ObjectId> newTips
+  ) throws IOException {
+    for (Map.Entry<String, ObjectId> entry: oldTips.entrySet()) {
+      ObjectId newTip = newTips.get(entry.getKey());
+      if (newTip == null) {
+        return false;
+      }
+      if (newTip.equals(entry.getValue())) {
+        continue;
+      }
+      if (!walk.isMergedInto(walk.parseCommit(entry.getValue()), walk.parseCommit(newTip))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static CommitTimeIndex build(Map<String, ObjectId> tips, List<RevCommit> commits) {
+    int[] times = new int[commits.size()];
+    byte[] rawIds = new byte[commits.size() * RAW_ID_LENGTH];
+    for (int i = 0; i < times.length; i++) {
+      RevCommit commit = commits.get(i);
+      times[i] = commit.getCommitTime();
+      commit.copyRawTo(rawIds, i * RAW_ID_LENGTH);
+    }
+    return new CommitTimeIndex(tips, times, rawIds);
+  }
+
+  /**
+   * @param newTips the refs the new index is built from.
+   * @param added commits which are not in this index, sorted by their commit times.
+   * @return a new index which has the commits in this index and added.
+   */
+  private CommitTimeIndex merge(Map<String, ObjectId> newTips, List<RevCommit> added) {
+    int[] newTimes = new int[times.length + added.size()];
+    byte[] newRawIds = new byte[newTimes.length * RAW_ID_LENGTH];
+    int i = 0;
+    int j = 0;
+    int k = 0;
+    while (i < times.length || j < added.size()) {
+      if (j == added.size() || (i < times.length && times[i] <= added.get(j).getCommitTime())) {
+        newTimes[k] = times[i];
+        System.arraycopy(
+          rawIds, i * RAW_ID_LENGTH, newRawIds, k * RAW_ID_LENGTH, RAW_ID_LENGTH
+        );
+        i++;
+        k++;
+        continue;
+      }
+
+      RevCommit commit = added.get(j++);
+      // A walk can return a few uninteresting commits if commit times are skewed, and such
+      // ones are already in this index with the same time, which have been copied just above.
+      boolean duplicated = false;
+      for (int l = k - 1; l >= 0 && newTimes[l] == commit.getCommitTime(); l--) {
+        if (commit.equals(ObjectId.fromRaw(newRawIds, l * RAW_ID_LENGTH))) {
+          duplicated = true;
+          break;
+        }
+      }
+      if (duplicated) {
+        continue;
+      }
+      newTimes[k] = commit.getCommitTime();
+      commit.copyRawTo(newRawIds, k * RAW_ID_LENGTH);
+      k++;
+    }
+    return new CommitTimeIndex(
+             newTips,
+             Arrays.copyOf(newTimes, k),
+             Arrays.copyOf(newRawIds, k * RAW_ID_LENGTH)
+           );
+  }
+
+  /**
+   * @param since the start of the range in seconds since the epoch, inclusive.
+   * @param until the end of the range in seconds since the epoch, exclusive.
+   * @return IDs of the commits committed in the range, newest first. Never null.
+   */
+  ObjectId[] find(long since, long until) {
+    int from = lowerBound(since);
+    int to = Math.max(from, lowerBound(until));
+    ObjectId[] ids = new ObjectId[to - from];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = ObjectId.fromRaw(rawIds, (to - 1 - i) * RAW_ID_LENGTH);
+    }
+    return ids;
+  }
+
+  /**
+   * @return the index of the first commit committed at time or later.
+   */
+  private int lowerBound(long time) {
+    int low = 0;
+    int high = times.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (times[mid] < time) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return the number of commits in this index.
+   */
+  int size() {
+    return times.length;
+  }
+
+}
@@ -0,0 +1,398 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.dao.jgit;
+
+import java.io.IOException;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events of operations on repositories.
+ * The events are created only if the running JVM has the JFR API (jdk.jfr), which is the case
+ * with JDK 11+ and OpenJDK 8u262+. Otherwise, the begin methods return null and the commit
+ * methods do nothing, and the event classes are never loaded.
+ * When no recording is running, an event costs an allocation which the JIT usually eliminates.
+ * Event fields which are expensive to get are set only if the event is to be committed.
+ *
+ * @author Kaito Yamada
+ */
+final class JfrEvents {
+
+  private static final boolean AVAILABLE = isAvailable();
+
+  private JfrEvents() { throw new AssertionError(); }
+
+  private static boolean isAvailable() {
+    try {
+      Class.forName("jdk.jfr.Event", false, JfrEvents.class.getClassLoader());
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  /**
+   * @return a begun event, or null if JFR isn't available.
+   */
+  static CloneEvent beginClone() {
+    if (!AVAILABLE) {
+      return null;
+    }
+    CloneEvent event = new CloneEvent();
+    event.begin();
+    return event;
+  }
+
+  /**
+   * @param event the event {@link #beginClone()} returned.
+   * @param token token
+   * @param uri the URI of the remote repository.
+   */
+  static void commit(CloneEvent event, String token, String uri) {
+    if (event == null) {
+      return;
+    }
+    event.end();
+    if (event.shouldCommit()) {
+      event.token = token;
+      event.uri = uri;
+      try {
+        event.diskUsage = RepositoryResolver.getInstance().measureDiskUsage(token);
+      } catch (IOException e) {
+        // Commit the event without the disk usage.
+      }
+      event.commit();
+    }
+  }
+
+  /**
+   * @return a begun event, or null if JFR isn't available.
+   */
+  static FetchEvent beginFetch() {
+    if (!AVAILABLE) {
+      return null;
+    }
+    FetchEvent event = new FetchEvent();
+    event.begin();
+    return event;
+  }
+
+  /**
+   * @param event the event {@link #beginFetch()} returned.
+   * @param token token
+   * @param updatedRefs the number of refs the fetch updated.
+   */
+  static void commit(FetchEvent event, String token, int updatedRefs) {
+    if (event == null) {
+      return;
+    }
+    event.end();
+    if (event.shouldCommit()) {
+      event.token = token;
+      event.updatedRefs = updatedRefs;
+      event.commit();
+    }
+  }
+
+  /**
+   * @return a begun event, or null if JFR isn't available.
+   */
+  static RepositoryOpenEvent beginRepositoryOpen() {
+    if (!AVAILABLE) {
+      return null;
+    }
+    RepositoryOpenEvent event = new RepositoryOpenEvent();
+    event.begin();
+    return event;
+  }
+
+  /**
+   * @param event the event {@link #beginRepositoryOpen()} returned.
+   * @param token token
+   * @param restored whether the repository has been restored after eviction.
+   */
+  static void commit(RepositoryOpenEvent event, String token, boolean restored) {
+    if (event == null) {
+      return;
+    }
+    event.end();
+    if (event.shouldCommit()) {
+      event.token = token;
+      event.restored = restored;
+      event.commit();
+    }
+  }
+
+  /**
+   * @return a begun event, or null if JFR isn't available.
+   */
+  static HistoryWalkEvent beginHistoryWalk() {
+    if (!AVAILABLE) {
+      return null;
+    }
+    HistoryWalkEvent event = new HistoryWalkEvent();
+    event.begin();
+    return event;
+  }
+
+  /**
+   * @param event the event {@link #beginHistoryWalk()} returned.
+   * @param token token
+   * @param operation the operation which walked the history.
+   * @param commits the number of commits walked or counted.
+   */
+  static void commit(HistoryWalkEvent event, String token, String operation, int commits) {
+    if (event == null) {
+      return;
+    }
+    event.end();
+    if (event.shouldCommit()) {
+      event.token = token;
+      event.operation = operation;
+      event.commits = commits;
+      event.commit();
+    }
+  }
+
+  /**
+   * @return a begun event, or null if JFR isn't available.
+   */
+  static TreeParseEvent beginTreeParse() {
+    if (!AVAILABLE) {
+      return null;
+    }
+    TreeParseEvent event = new TreeParseEvent();
+    event.begin();
+    return event;
+  }
+
+  /**
+   * @param event the event {@link #beginTreeParse()} returned.
+   * @param token token
+   * @param objectId the ID of the tree.
+   * @param entries the number of entries in the tree.
+   * @param size the size of the raw tree in bytes.
+   */
+  static void commit(
+    TreeParseEvent event, String token, String objectId, int entries, long size
+  ) {
+    if (event == null) {
+      return;
+    }
+    event.end();
+    if (event.shouldCommit()) {
+      event.token = token;
+      event.objectId = objectId;
+      event.entries = entries;
+      event.size = size;
+      event.commit();
+    }
+  }
+
+  /**
+   * @return a begun event, or null if JFR isn't available.
+   */
+  static ObjectLoadEvent beginObjectLoad() {
+    if (!AVAILABLE) {
+      return null;
+    }
+    ObjectLoadEvent event = new ObjectLoadEvent();
+    event.begin();
+    return event;
+  }
+
+  /**
+   * @param event the event {@link #beginObjectLoad()} returned.
+   * @param token token
+   * @param objectId the ID of the object.
+   * @param type the type of the object, e.g. blob.
+   * @param size the size of the inflated object in bytes.
+   */
+  static void commit(
+    ObjectLoadEvent event, String token, String objectId, String type, long size
+  ) {
+    if (event == null) {
+      return;
+    }
+    event.end();
+    if (event.shouldCommit()) {
+      event.token = token;
+      event.objectId = objectId;
+      event.objectType = type;
+      event.size = size;
+      event.commit();
+    }
+  }
+
+  /**
+   * @return a begun event, or null if JFR isn't available.
+   */
+  static EvictionEvent beginEviction() {
+    if (!AVAILABLE) {
+      return null;
+    }
+    EvictionEvent event = new EvictionEvent();
+    event.begin();
+    return event;
+  }
+
+  /**
+   * @param event the event {@link #beginEviction()} returned.
+   * @param token token
+   * @param diskUsage the disk usage of the repository in bytes.
+   * @param idleTime the time in milliseconds since the last access to the repository.
+   */
+  static void commit(EvictionEvent event, String token, long diskUsage, long idleTime) {
+    if (event == null) {
+      return;
+    }
+    event.end();
+    if (event.shouldCommit()) {
+      event.token = token;
+      event.diskUsage = diskUsage;
+      event.idleTime = idleTime;
+      event.commit();
+    }
+  }
+
+  @Name("com.github.kaitoy.goslings.Clone")
+  @Label("Repository Clone")
+  @Category({"Goslings", "Repository"})
+  @Description("A clone of a remote repository into the working directory.")
+  static final class CloneEvent extends Event {
+
+    @Label("Token")
+    String token;
+
+    @Label("URI")
+    String uri;
+
+    @Label("Disk Usage")
+    @DataAmount
+    long diskUsage;
+
+  }
+
+  @Name("com.github.kaitoy.goslings.Fetch")
+  @Label("Repository Fetch")
+  @Category({"Goslings", "Repository"})
+  @Description("A fetch of updates into a clone.")
+  static final class FetchEvent extends Event {
+
+    @Label("Token")
+    String token;
+
+    @Label("Updated Refs")
+    int updatedRefs;
+
+  }
+
+  @Name("com.github.kaitoy.goslings.RepositoryOpen")
+  @Label("Repository Open")
+  @Category({"Goslings", "Repository"})
+  @Description("An open of a repository which isn't cached.")
+  static final class RepositoryOpenEvent extends Event {
+
+    @Label("Token")
+    String token;
+
+    @Label("Restored")
+    @Description("Whether the repository has been restored after eviction.")
+    boolean restored;
+
+  }
+
+  @Name("com.github.kaitoy.goslings.HistoryWalk")
+  @Label("History Walk")
+  @Category({"Goslings", "Object"})
+  @Description("A walk of commits.")
+  static final class HistoryWalkEvent extends Event {
+
+    @Label("Token")
+    String token;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Commits")
+    int commits;
+
+  }
+
+  @Name("com.github.kaitoy.goslings.TreeParse")
+  @Label("Tree Parse")
+  @Category({"Goslings", "Object"})
+  @Description("A parse of a raw tree object.")
+  @StackTrace(false)
+  static final class TreeParseEvent extends Event {
+
+    @Label("Token")
+    String token;
+
+    @Label("Object ID")
+    String objectId;
+
+    @Label("Entries")
+    int entries;
+
+    @Label("Size")
+    @DataAmount
+    long size;
+
+  }
+
+  @Name("com.github.kaitoy.goslings.ObjectLoad")
+  @Label("Object Load")
+  @Category({"Goslings", "Object"})
+  @Description("A load of the inflated contents of an object.")
+  @StackTrace(false)
+  static final class ObjectLoadEvent extends Event {
+
+    @Label("Token")
+    String token;
+
+    @Label("Object ID")
+    String objectId;
+
+    @Label("Object Type")
+    String objectType;
+
+    @Label("Size")
+    @DataAmount
+    long size;
+
+  }
+
+  @Name("com.github.kaitoy.goslings.Eviction")
+  @Label("Repository Eviction")
+  @Category({"Goslings", "Repository"})
+  @Description("A removal of a repository from the working directory.")
+  static final class EvictionEvent extends Event {
+
+    @Label("Token")
+    String token;
+
+    @Label("Disk Usage")
+    @DataAmount
+    long diskUsage;
+
+    @Label("Idle Time")
+    @Timespan(Timespan.MILLISECONDS)
+    long idleTime;
+
+  }
+
+}
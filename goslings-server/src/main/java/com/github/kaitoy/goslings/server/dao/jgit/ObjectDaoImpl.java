@@ -13,23 +13,42 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import javax.xml.bind.DatatypeConverter;
 
+import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.api.errors.NoHeadException;
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.internal.storage.file.Pack;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectDatabase;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
 import org.eclipse.jgit.revwalk.RevObject;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -39,7 +58,13 @@ import org.springframework.stereotype.Repository;
 import com.github.kaitoy.goslings.server.BeanQualifiers;
 import com.github.kaitoy.goslings.server.dao.DaoException;
 import com.github.kaitoy.goslings.server.dao.ObjectDao;
+import com.github.kaitoy.goslings.server.metrics.RequestTimings;
 import com.github.kaitoy.goslings.server.resource.Commit;
+import com.github.kaitoy.goslings.server.resource.CommitChain;
+import com.github.kaitoy.goslings.server.resource.CommitGraph;
+import com.github.kaitoy.goslings.server.resource.CommitMetadata;
+import com.github.kaitoy.goslings.server.resource.FieldSet;
+import com.github.kaitoy.goslings.server.resource.ObjectContents;
 import com.github.kaitoy.goslings.server.resource.Tree;
 
 /**
@@ -54,12 +79,34 @@ public final class ObjectDaoImpl implements ObjectDao {
   private static final Logger LOG = LoggerFactory.getLogger(ObjectDaoImpl.class);
   private static final RepositoryResolver resolver = RepositoryResolver.getInstance();
 
+  /*
+   * Mapping from tokens to indexes of commit times. They are kept across fetches, which
+   * update them incrementally, and discarded when their repositories are evicted.
+   */
+  private static final Map<String, CommitTimeIndex> COMMIT_TIME_INDEXES
+    = new ConcurrentHashMap<>();
+
+  static {
+    resolver.addEvictionListener(COMMIT_TIME_INDEXES::remove);
+  }
+
   @Override
   public Commit[] getCommits(String token) {
+    return getCommits(token, Commit.FIELDS);
+  }
+
+  @Override
+  public Commit[] getCommits(String token, FieldSet fields) {
+    Git git = resolver.getGit(token);
+    long start = RequestTimings.start();
+    JfrEvents.HistoryWalkEvent event = JfrEvents.beginHistoryWalk();
     try {
-      return StreamSupport.stream(resolver.getGit(token).log().all().call().spliterator(), false)
-               .map(this::convertToCommit)
-               .toArray(Commit[]::new);
+      Commit[] commits
+        = StreamSupport.stream(git.log().all().call().spliterator(), false)
+            .map(commit -> convertToCommit(commit, fields))
+            .toArray(Commit[]::new);
+      JfrEvents.commit(event, token, "log", commits.length);
+      return commits;
     } catch (NoHeadException  e) {
       String message
         = new StringBuilder()
@@ -87,12 +134,315 @@ public final class ObjectDaoImpl implements ObjectDao {
             .toString();
       LOG.error(message, e);
       throw new DaoException(message, e);
+    } finally {
+      RequestTimings.record(RequestTimings.WALK, start);
     }
   }
 
   @Override
-  @Cacheable
+  public Commit[] getCommits(String token, FieldSet fields, long since, long until) {
+    org.eclipse.jgit.lib.Repository repo = resolver.getRepository(token);
+    long start = RequestTimings.start();
+    JfrEvents.HistoryWalkEvent event = JfrEvents.beginHistoryWalk();
+    try (RevWalk walk = new RevWalk(repo)) {
+      CommitTimeIndex index = CommitTimeIndex.update(COMMIT_TIME_INDEXES.get(token), repo);
+      COMMIT_TIME_INDEXES.put(token, index);
+
+      walk.setRetainBody(false);
+      ObjectId[] ids = index.find(since, until);
+      Commit[] commits = new Commit[ids.length];
+      for (int i = 0; i < ids.length; i++) {
+        commits[i] = convertToCommit(walk.parseCommit(ids[i]), fields);
+      }
+      JfrEvents.commit(event, token, "timeRange", commits.length);
+      return commits;
+    } catch (IOException e) {
+      String message
+        = new StringBuilder()
+            .append("Failed to get commits in the repository ")
+            .append(token)
+            .append(" due to an I/O error.")
+            .toString();
+      LOG.error(message, e);
+      throw new DaoException(message, e);
+    } finally {
+      RequestTimings.record(RequestTimings.WALK, start);
+    }
+  }
+
+  /**
+   * @return the number of repositories whose commit times are indexed.
+   */
+  static int getCommitTimeIndexCount() {
+    return COMMIT_TIME_INDEXES.size();
+  }
+
+  @Override
+  public CommitGraph getCommitGraph(String token, FieldSet fields, int minChainLength) {
+    org.eclipse.jgit.lib.Repository repo = resolver.getRepository(token);
+    long start = RequestTimings.start();
+    JfrEvents.HistoryWalkEvent event = JfrEvents.beginHistoryWalk();
+    try (RevWalk walk = new RevWalk(repo)) {
+      // Parents and trees are parsed into RevCommits, so the messages are never needed.
+      walk.setRetainBody(false);
+      RevFlag hasChild = walk.newFlag("HAS_CHILD");
+      RevFlag hasChildren = walk.newFlag("HAS_CHILDREN");
+      RevFlag pinned = walk.newFlag("PINNED");
+      for (RevCommit tip: markAllRefs(repo, walk)) {
+        tip.add(pinned);
+      }
+
+      // Count children up to two with the flags, which is all the chains need to know.
+      List<RevCommit> walked = new ArrayList<>();
+      for (RevCommit commit: walk) {
+        walked.add(commit);
+        for (RevCommit parent: commit.getParents()) {
+          parent.add(parent.has(hasChild) ? hasChildren : hasChild);
+        }
+      }
+
+      // A chain is headed by a linear commit whose only child isn't linear. So, chains can be
+      // found from the parents of non-linear commits without indexing children.
+      Predicate<RevCommit> isLinear
+        = commit -> commit.getParentCount() == 1
+            && commit.has(hasChild)
+            && !commit.has(hasChildren)
+            && !commit.has(pinned);
+      List<Commit> commits = new ArrayList<>();
+      List<CommitChain> chains = new ArrayList<>();
+      for (RevCommit commit: walked) {
+        if (isLinear.test(commit)) {
+          continue;
+        }
+        commits.add(convertToCommit(commit, fields));
+        for (RevCommit head: commit.getParents()) {
+          if (!isLinear.test(head)) {
+            continue;
+          }
+          RevCommit tail = head;
+          int length = 1;
+          while (isLinear.test(tail.getParent(0))) {
+            tail = tail.getParent(0);
+            length++;
+          }
+          if (length >= minChainLength) {
+            chains.add(
+              new CommitChain(
+                head.getName(), tail.getName(), length, new String[] {tail.getParent(0).getName()}
+              )
+            );
+          }
+          else {
+            for (RevCommit c = head; c != tail.getParent(0); c = c.getParent(0)) {
+              commits.add(convertToCommit(c, fields));
+            }
+          }
+        }
+      }
+      JfrEvents.commit(event, token, "graph", walked.size());
+      return new CommitGraph(
+               commits.toArray(new Commit[commits.size()]),
+               chains.toArray(new CommitChain[chains.size()])
+             );
+    } catch (IOException e) {
+      String message
+        = new StringBuilder()
+            .append("Failed to get commits in the repository ")
+            .append(token)
+            .append(" due to an I/O error.")
+            .toString();
+      LOG.error(message, e);
+      throw new DaoException(message, e);
+    } finally {
+      RequestTimings.record(RequestTimings.WALK, start);
+    }
+  }
+
+  @Override
+  public Commit[] getCommitChain(String token, String headId, String tailId, FieldSet fields) {
+    long start = RequestTimings.start();
+    try (RevWalk walk = new RevWalk(resolver.getRepository(token))) {
+      walk.setRetainBody(false);
+      ObjectId tail = ObjectId.fromString(tailId);
+      List<Commit> commits = new ArrayList<>();
+      RevCommit commit = walk.parseCommit(ObjectId.fromString(headId));
+      while (true) {
+        commits.add(convertToCommit(commit, fields));
+        if (commit.equals(tail)) {
+          return commits.toArray(new Commit[commits.size()]);
+        }
+        if (commit.getParentCount() != 1) {
+          String message
+            = new StringBuilder()
+                .append("Failed to get a chain of commits in the repository ")
+                .append(token)
+                .append(". ")
+                .append(tailId)
+                .append(" can't be reached from ")
+                .append(headId)
+                .append(" through commits which have a single parent.")
+                .toString();
+          LOG.error(message);
+          throw new DaoException(message);
+        }
+        commit = walk.parseCommit(commit.getParent(0));
+      }
+    } catch (MissingObjectException e) {
+      String message
+        = new StringBuilder()
+            .append("Failed to get a chain of commits in the repository ")
+            .append(token)
+            .append(". ")
+            .append(e.getObjectId().getName())
+            .append(" doesn't exist.")
+            .toString();
+      LOG.error(message);
+      throw new DaoException(message, e);
+    } catch (IncorrectObjectTypeException e) {
+      String message
+        = new StringBuilder()
+            .append("Failed to get a chain of commits in the repository ")
+            .append(token)
+            .append(". ")
+            .append(headId)
+            .append(" is not a commit.")
+            .toString();
+      LOG.error(message);
+      throw new DaoException(message, e);
+    } catch (IOException e) {
+      String message
+        = new StringBuilder()
+            .append("Failed to get a chain of commits in the repository ")
+            .append(token)
+            .append(" due to an I/O error.")
+            .toString();
+      LOG.error(message, e);
+      throw new DaoException(message, e);
+    } finally {
+      RequestTimings.record(RequestTimings.PARSE, start);
+    }
+  }
+
+  @Override
+  public CommitMetadata[] getCommitMetadata(
+    String token, String[] objectIds, int maxMessageLength
+  ) {
+    long start = RequestTimings.start();
+    // A single walk reads all the commits through its ObjectReader, which reuses inflaters
+    // and pack windows across them.
+    try (RevWalk walk = new RevWalk(resolver.getRepository(token))) {
+      CommitMetadata[] metadata = new CommitMetadata[objectIds.length];
+      for (int i = 0; i < objectIds.length; i++) {
+        String objectId = objectIds[i];
+        try {
+          RevCommit commit = walk.parseCommit(ObjectId.fromString(objectId));
+          metadata[i] = convertToCommitMetadata(commit, maxMessageLength);
+          // The metadata has all it needs, so don't let the walk hold the raw commit.
+          commit.disposeBody();
+        } catch (MissingObjectException e) {
+          String message
+            = new StringBuilder()
+                .append("Failed to get a commit in the repository ")
+                .append(token)
+                .append(". ")
+                .append(objectId)
+                .append(" doesn't exist.")
+                .toString();
+          LOG.error(message);
+          throw new DaoException(message, e);
+        } catch (IncorrectObjectTypeException e) {
+          String message
+            = new StringBuilder()
+                .append("Failed to get a commit in the repository ")
+                .append(token)
+                .append(". ")
+                .append(objectId)
+                .append(" is not a commit.")
+                .toString();
+          LOG.error(message);
+          throw new DaoException(message, e);
+        } catch (IOException e) {
+          String message
+            = new StringBuilder()
+                .append("Failed to get a commit ")
+                .append(objectId)
+                .append(" in the repository ")
+                .append(token)
+                .append(" due to an I/O error.")
+                .toString();
+          LOG.error(message, e);
+          throw new DaoException(message, e);
+        }
+      }
+      return metadata;
+    } finally {
+      RequestTimings.record(RequestTimings.PARSE, start);
+    }
+  }
+
+  @Override
+  public Stream<Commit> streamCommits(String token) {
+    Git git = resolver.getGit(token);
+    RevWalk walk = new RevWalk(git.getRepository());
+    try {
+      markAllRefs(git.getRepository(), walk);
+    } catch (IOException e) {
+      walk.close();
+      String message
+        = new StringBuilder()
+            .append("Failed to get commits in the repository ")
+            .append(token)
+            .append(" due to an I/O error.")
+            .toString();
+      LOG.error(message, e);
+      throw new DaoException(message, e);
+    }
+
+    return StreamSupport.stream(walk.spliterator(), false)
+             .map(this::convertToCommit)
+             .onClose(walk::close);
+  }
+
+  /**
+   * Mark the commits which refs point to as starts of a walk, as git log --all does.
+   *
+   * @param repo the repository.
+   * @param walk the walk.
+   * @return the marked commits.
+   * @throws IOException if failed to read refs or commits.
+   */
+  private List<RevCommit> markAllRefs(
+    org.eclipse.jgit.lib.Repository repo, RevWalk walk
+  ) throws IOException {
+    List<RevCommit> starts = new ArrayList<>();
+    for (Ref ref: repo.getRefDatabase().getRefs()) {
+      if (!ref.isPeeled()) {
+        ref = repo.getRefDatabase().peel(ref);
+      }
+      ObjectId objectId
+        = ref.getPeeledObjectId() != null ? ref.getPeeledObjectId() : ref.getObjectId();
+      if (objectId == null) {
+        continue;
+      }
+      RevObject obj = walk.parseAny(objectId);
+      if (obj instanceof RevCommit) {
+        walk.markStart((RevCommit) obj);
+        starts.add((RevCommit) obj);
+      }
+    }
+    return starts;
+  }
+
+  @Override
   public Tree[] getTrees(String token, String[] objectIds) throws DaoException {
+    return getTrees(token, objectIds, Tree.FIELDS);
+  }
+
+  @Override
+  @Cacheable
+  public Tree[] getTrees(
+    String token, String[] objectIds, FieldSet fields
+  ) throws DaoException {
     try (RevWalk walk = new RevWalk(resolver.getRepository(token))) {
       List<Tree> trees = new ArrayList<>(objectIds.length);
       for (String objectId: objectIds) {
@@ -110,7 +460,7 @@ public final class ObjectDaoImpl implements ObjectDao {
             LOG.error(message + "It's {}.", obj.getClass());
             throw new DaoException(message);
           }
-          trees.add(convertToTree(token, (RevTree) obj));
+          trees.add(convertToTree(token, (RevTree) obj, fields));
         } catch (MissingObjectException e) {
           String message
             = new StringBuilder()
@@ -139,13 +489,205 @@ public final class ObjectDaoImpl implements ObjectDao {
     }
   }
 
+  @Override
+  public Stream<Tree.TreeEntry> streamTreeEntries(
+    String token, String objectId, boolean recursive
+  ) {
+    TreeWalk treeWalk = new TreeWalk(resolver.getGit(token).getRepository());
+    try {
+      treeWalk.addTree(ObjectId.fromString(objectId));
+      treeWalk.setRecursive(recursive);
+    } catch (MissingObjectException e) {
+      treeWalk.close();
+      String message
+        = new StringBuilder()
+            .append("Failed to get a tree in the repository ")
+            .append(token)
+            .append(". ")
+            .append(objectId)
+            .append(" doesn't exist.")
+            .toString();
+      LOG.error(message);
+      throw new DaoException(message, e);
+    } catch (IncorrectObjectTypeException e) {
+      treeWalk.close();
+      String message
+        = new StringBuilder()
+            .append("Failed to get a tree in the repository ")
+            .append(token)
+            .append(". ")
+            .append(objectId)
+            .append(" is not a tree.")
+            .toString();
+      LOG.error(message);
+      throw new DaoException(message, e);
+    } catch (IOException e) {
+      treeWalk.close();
+      String message
+        = new StringBuilder()
+            .append("Failed to get a tree ")
+            .append(objectId)
+            .append(" in the repository ")
+            .append(token)
+            .append(" due to an I/O error.")
+            .toString();
+      LOG.error(message, e);
+      throw new DaoException(message, e);
+    }
+
+    Spliterator<Tree.TreeEntry> entries
+      = new Spliterators.AbstractSpliterator<Tree.TreeEntry>(
+          Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL
+        ) {
+          @Override
+          public boolean tryAdvance(Consumer<? super Tree.TreeEntry> action) {
+            try {
+              if (!treeWalk.next()) {
+                return false;
+              }
+            } catch (IOException e) {
+              String message
+                = new StringBuilder()
+                    .append("Failed to walk the tree ")
+                    .append(objectId)
+                    .append(" in the repository ")
+                    .append(token)
+                    .append(" due to an I/O error.")
+                    .toString();
+              LOG.error(message, e);
+              throw new DaoException(message, e);
+            }
+            FileMode mode = treeWalk.getFileMode(0);
+            action.accept(
+              new Tree.TreeEntry(
+                treeWalk.getObjectId(0).getName(),
+                treeWalk.getPathString(),
+                String.format("%06o", mode.getBits()),
+                Constants.typeString(mode.getObjectType())
+              )
+            );
+            return true;
+          }
+        };
+    return StreamSupport.stream(entries, false).onClose(treeWalk::close);
+  }
+
   @Override
   @Cacheable
   public String getContents(String token, String objectId) {
-    RawContents rawContents = getRawContents(token, objectId);
+    return formatContents(token, objectId, getRawContents(token, objectId));
+  }
+
+  @Override
+  public ObjectContents[] getContents(String token, String[] objectIds, long byteBudget) {
+    org.eclipse.jgit.lib.Repository repo = resolver.getRepository(token);
+    ObjectId[] ids
+      = Arrays.stream(objectIds).map(ObjectId::fromString).toArray(ObjectId[]::new);
+    ObjectContents[] results = new ObjectContents[objectIds.length];
+    long remainingBudget = byteBudget;
+    try (ObjectReader reader = repo.newObjectReader()) {
+      for (int i: sortInPackOrder(token, repo, ids)) {
+        String objectId = objectIds[i];
+        long start = RequestTimings.start();
+        JfrEvents.ObjectLoadEvent event = JfrEvents.beginObjectLoad();
+        try {
+          // Check the size from the object header before inflating the object.
+          long size = reader.getObjectSize(ids[i], ObjectReader.OBJ_ANY);
+          if (size > remainingBudget) {
+            results[i] = new ObjectContents(objectId, null, true);
+            continue;
+          }
+          remainingBudget -= size;
+          ObjectLoader loader = reader.open(ids[i]);
+          RawContents rawContents = new RawContents(loader.getType(), loader.getBytes());
+          JfrEvents.commit(
+            event,
+            token,
+            objectId,
+            Constants.typeString(rawContents.type),
+            rawContents.contents.length
+          );
+          results[i]
+            = new ObjectContents(objectId, formatContents(token, objectId, rawContents), false);
+        } catch (MissingObjectException e) {
+          String message
+            = new StringBuilder()
+                .append("The specified object ")
+                .append(objectId)
+                .append(" doesn't exist in the repository ")
+                .append(token)
+                .append(".")
+                .toString();
+          LOG.error(message, e);
+          throw new DaoException(message, e);
+        } catch (IOException e) {
+          String message
+            = new StringBuilder()
+                .append("Failed to get contents of the specified object ")
+                .append(objectId)
+                .append(" in the repository ")
+                .append(token)
+                .append(".")
+                .toString();
+          LOG.error(message, e);
+          throw new DaoException(message, e);
+        } finally {
+          RequestTimings.record(RequestTimings.INFLATE, start);
+        }
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Sort objects in the order they are stored in pack files, so that reading them goes forward
+   * through pack files instead of jumping back and forth. Loose objects come last.
+   *
+   * @return indexes of ids in the order to read.
+   */
+  private int[] sortInPackOrder(
+    String token, org.eclipse.jgit.lib.Repository repo, ObjectId[] ids
+  ) {
+    int[] packNums = new int[ids.length];
+    long[] offsets = new long[ids.length];
+    Arrays.fill(packNums, Integer.MAX_VALUE);
+    ObjectDatabase odb = repo.getObjectDatabase();
+    if (odb instanceof ObjectDirectory) {
+      int packNum = 0;
+      // Pack and PackIndex are internal API of JGit, but there is no public way to get offsets.
+      for (Pack pack: ((ObjectDirectory) odb).getPacks()) {
+        try {
+          for (int i = 0; i < ids.length; i++) {
+            if (packNums[i] != Integer.MAX_VALUE) {
+              continue;
+            }
+            long offset = pack.getIndex().findOffset(ids[i]);
+            if (offset >= 0) {
+              packNums[i] = packNum;
+              offsets[i] = offset;
+            }
+          }
+        } catch (IOException e) {
+          // The order is only an optimization, so read the rest as if they were loose.
+          LOG.warn("Failed to read a pack index in the repository {}.", token, e);
+        }
+        packNum++;
+      }
+    }
+    return IntStream.range(0, ids.length)
+             .boxed()
+             .sorted(
+               Comparator.<Integer>comparingInt(i -> packNums[i])
+                 .thenComparingLong(i -> offsets[i])
+             )
+             .mapToInt(Integer::intValue)
+             .toArray();
+  }
+
+  private String formatContents(String token, String objectId, RawContents rawContents) {
     if (rawContents.type == Constants.OBJ_TREE) {
       try {
-        List<TreeEntry> entries = parseTree(rawContents.contents);
+        List<TreeEntry> entries = parseTree(token, objectId, rawContents.contents);
         StringBuilder sb = new StringBuilder();
         for (TreeEntry entry: entries) {
           sb.append(entry.mode)
@@ -176,9 +718,20 @@ public final class ObjectDaoImpl implements ObjectDao {
 
   @Cacheable
   private RawContents getRawContents(String token, String objectId) {
+    Git git = resolver.getGit(token);
+    long start = RequestTimings.start();
+    JfrEvents.ObjectLoadEvent event = JfrEvents.beginObjectLoad();
     try {
-      ObjectLoader loader = resolver.getRepository(token).open(ObjectId.fromString(objectId));
-      return new RawContents(loader.getType(), loader.getBytes());
+      ObjectLoader loader = git.getRepository().open(ObjectId.fromString(objectId));
+      RawContents rawContents = new RawContents(loader.getType(), loader.getBytes());
+      JfrEvents.commit(
+        event,
+        token,
+        objectId,
+        Constants.typeString(rawContents.type),
+        rawContents.contents.length
+      );
+      return rawContents;
     } catch (MissingObjectException e) {
       String message
         = new StringBuilder()
@@ -201,34 +754,83 @@ public final class ObjectDaoImpl implements ObjectDao {
             .toString();
       LOG.error(message, e);
       throw new DaoException(message, e);
+    } finally {
+      RequestTimings.record(RequestTimings.INFLATE, start);
     }
   }
 
-  private Commit convertToCommit(RevCommit commit) {
+  Commit convertToCommit(RevCommit commit) {
+    return convertToCommit(commit, Commit.FIELDS);
+  }
+
+  private Commit convertToCommit(RevCommit commit, FieldSet fields) {
     return new Commit(
+             fields,
+             fields.contains("id") ? commit.getName() : null,
+             fields.contains("parentIds")
+               ? Arrays.stream(commit.getParents())
+                   .map(parent -> parent.getName())
+                   .toArray(String[]::new)
+               : null,
+             fields.contains("treeId") ? commit.getTree().getName() : null
+           );
+  }
+
+  private CommitMetadata convertToCommitMetadata(RevCommit commit, int maxMessageLength) {
+    String message = commit.getFullMessage();
+    boolean truncated = false;
+    if (maxMessageLength >= 0 && message.length() > maxMessageLength) {
+      int end = maxMessageLength;
+      if (end > 0 && Character.isHighSurrogate(message.charAt(end - 1))) {
+        // Don't split a surrogate pair.
+        end--;
+      }
+      message = message.substring(0, end);
+      truncated = true;
+    }
+    return new CommitMetadata(
              commit.getName(),
-             Arrays.stream(commit.getParents())
-               .map(parent -> parent.getName())
-               .toArray(String[]::new),
-             commit.getTree().getName()
+             convertToPerson(commit.getAuthorIdent()),
+             convertToPerson(commit.getCommitterIdent()),
+             message,
+             truncated
+           );
+  }
+
+  private CommitMetadata.Person convertToPerson(PersonIdent ident) {
+    return new CommitMetadata.Person(
+             ident.getName(),
+             ident.getEmailAddress(),
+             ident.getWhen().getTime(),
+             ident.getTimeZoneOffset()
            );
   }
 
-  private Tree convertToTree(String token, RevTree tree) {
+  private Tree convertToTree(String token, RevTree tree, FieldSet fields) {
+    String id = fields.contains("id") ? tree.getName() : null;
+    boolean needsTrees = fields.contains("trees");
+    boolean needsBlobs = fields.contains("blobs");
+    if (!needsTrees && !needsBlobs) {
+      // The tree has been loaded to check its type, but its entries needn't be parsed.
+      return new Tree(fields, id, null, null);
+    }
+
     byte[] rawContents = getRawContents(token, tree.getName()).contents;
     try {
-      List<TreeEntry> entries = parseTree(rawContents);
-      Map<String, String> trees = new HashMap<>();
-      Map<String, String> blobs = new HashMap<>();
+      List<TreeEntry> entries = parseTree(token, tree.getName(), rawContents);
+      Map<String, String> trees = needsTrees ? new HashMap<>() : null;
+      Map<String, String> blobs = needsBlobs ? new HashMap<>() : null;
       for (TreeEntry entry: entries) {
         if (entry.isTree()) {
-          trees.put(entry.id, entry.name);
+          if (needsTrees) {
+            trees.put(entry.id, entry.name);
+          }
         }
-        else {
+        else if (needsBlobs) {
           blobs.put(entry.id, entry.name);
         }
       }
-      return new Tree(tree.getName(), trees, blobs);
+      return new Tree(fields, id, trees, blobs);
     } catch (IOException e) {
         String message
           = new StringBuilder()
@@ -243,8 +845,18 @@ public final class ObjectDaoImpl implements ObjectDao {
     }
   }
 
+  private List<TreeEntry> parseTree(
+    String token, String objectId, byte[] tree
+  ) throws IOException {
+    JfrEvents.TreeParseEvent event = JfrEvents.beginTreeParse();
+    List<TreeEntry> entries = parseTree(tree);
+    JfrEvents.commit(event, token, objectId, entries.size(), tree.length);
+    return entries;
+  }
+
   @Cacheable
-  private List<TreeEntry> parseTree(byte[] tree) throws IOException {
+  List<TreeEntry> parseTree(byte[] tree) throws IOException {
+    long start = RequestTimings.start();
     List<TreeEntry> entries = new ArrayList<>();
     ByteArrayInputStream in = new ByteArrayInputStream(tree);
     byte[] mode = new byte[6];
@@ -273,6 +885,7 @@ public final class ObjectDaoImpl implements ObjectDao {
       nameStream.reset();
     }
 
+    RequestTimings.record(RequestTimings.PARSE, start);
     return entries;
   }
 
@@ -11,13 +11,35 @@ package com.github.kaitoy.goslings.server.dao.jgit;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.StreamSupport;
 
+import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.BitmapIndex;
+import org.eclipse.jgit.lib.BitmapIndex.BitmapBuilder;
+import org.eclipse.jgit.lib.BitmapObject;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.BitmapWalker;
+import org.eclipse.jgit.revwalk.ObjectWalk;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -25,7 +47,10 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import com.github.kaitoy.goslings.server.BeanQualifiers;
 import com.github.kaitoy.goslings.server.dao.DaoException;
 import com.github.kaitoy.goslings.server.dao.ReferenceDao;
+import com.github.kaitoy.goslings.server.metrics.RequestTimings;
 import com.github.kaitoy.goslings.server.resource.Branch;
+import com.github.kaitoy.goslings.server.resource.BranchComparison;
+import com.github.kaitoy.goslings.server.resource.FieldSet;
 import com.github.kaitoy.goslings.server.resource.SymbolicReference;
 import com.github.kaitoy.goslings.server.resource.Tag;
 
@@ -43,14 +68,30 @@ public final class ReferenceDaoImpl implements ReferenceDao {
   private static final String[] SYMBOLIC_REFS
     = new String[] { "HEAD", "ORIG_HEAD", "FETCH_HEAD", "MERGE_HEAD" };
 
+  /*
+   * Mapping from tokens to caches of branch comparisons.
+   */
+  private static final Map<String, ComparisonCache> COMPARISONS = new ConcurrentHashMap<>();
+
+  static {
+    resolver.addInvalidationListener(COMPARISONS::remove);
+  }
+
   @Override
   public Branch[] getBranches(String token) {
+    return getBranches(token, Branch.FIELDS);
+  }
+
+  @Override
+  public Branch[] getBranches(String token, FieldSet fields) {
+    Git git = resolver.getGit(token);
+    long start = RequestTimings.start();
     try {
-      return StreamSupport.stream(resolver.getGit(token).branchList().call().spliterator(), false)
+      return StreamSupport.stream(git.branchList().call().spliterator(), false)
                // JGit mix up the detached HEAD with branches,
                // so filter it out firstly.
                .filter(ref -> !ref.getName().equals("HEAD"))
-               .map(this::convertToBranch)
+               .map(ref -> convertToBranch(ref, fields))
                .toArray(Branch[]::new);
     } catch (GitAPIException e) {
       String message
@@ -61,6 +102,8 @@ public final class ReferenceDaoImpl implements ReferenceDao {
             .toString();
       LOG.error(message, e);
       throw new DaoException(message, e);
+    } finally {
+      RequestTimings.record(RequestTimings.WALK, start);
     }
   }
 
@@ -68,18 +111,242 @@ public final class ReferenceDaoImpl implements ReferenceDao {
    * This method converts a {@link Ref} object to a {@link Branch} object.
    *
    * @param ref a {@link Ref} object representing a branch.
+   * @param fields the fields to set to the {@link Branch} object.
    * @return a new {@link Branch} instance.
    */
-  private Branch convertToBranch(Ref ref) {
-    return new Branch(ref.getName(), ref.getObjectId().getName());
+  private Branch convertToBranch(Ref ref, FieldSet fields) {
+    return new Branch(
+             fields,
+             fields.contains("name") ? ref.getName() : null,
+             fields.contains("referentId") ? ref.getObjectId().getName() : null
+           );
+  }
+
+  /**
+   * @return the number of repositories whose branch comparisons are cached.
+   */
+  static int getComparisonCacheSize() {
+    return COMPARISONS.size();
+  }
+
+  @Override
+  public BranchComparison[] compareBranches(String token, String baseName) {
+    String snapshotId = resolver.getRefsSnapshotId(token);
+    ComparisonCache cache
+      = COMPARISONS.compute(
+          token,
+          (k, c) -> {
+            if (c != null && c.snapshotId.equals(snapshotId)) {
+              return c;
+            }
+            return new ComparisonCache(snapshotId);
+          }
+        );
+    BranchComparison[] comparisons = cache.comparisons.get(baseName);
+    if (comparisons == null) {
+      long start = RequestTimings.start();
+      JfrEvents.HistoryWalkEvent event = JfrEvents.beginHistoryWalk();
+      comparisons = doCompareBranches(token, baseName);
+      int commits = 0;
+      for (BranchComparison comparison: comparisons) {
+        commits += comparison.getAhead() + comparison.getBehind();
+      }
+      JfrEvents.commit(event, token, "compareBranches", commits);
+      RequestTimings.record(RequestTimings.WALK, start);
+      cache.comparisons.put(baseName, comparisons);
+    }
+    return comparisons;
+  }
+
+  private BranchComparison[] doCompareBranches(String token, String baseName) {
+    Repository repo = resolver.getRepository(token);
+    try (ObjectReader reader = repo.newObjectReader(); RevWalk walk = new RevWalk(reader)) {
+      Ref baseRef = repo.findRef(baseName);
+      if (baseRef == null || baseRef.getObjectId() == null) {
+        String message
+          = new StringBuilder()
+              .append("Failed to compare branches in the repository ")
+              .append(token)
+              .append(". The base branch ")
+              .append(baseName)
+              .append(" doesn't exist.")
+              .toString();
+        LOG.error(message);
+        throw new DaoException(message);
+      }
+      RevCommit base = walk.parseCommit(baseRef.getObjectId());
+
+      BitmapIndex bitmapIndex = reader.getBitmapIndex();
+      BitmapBuilder baseReachables = null;
+      RevFlag inBase = walk.newFlag("IN_BASE");
+      RevFlag seen = walk.newFlag("SEEN");
+      int baseCount = 0;
+      if (bitmapIndex != null) {
+        baseReachables = findReachables(reader, bitmapIndex, base);
+      }
+      else {
+        walk.retainOnReset(inBase);
+        baseCount = markReachables(walk, base, inBase, inBase)[0];
+      }
+      List<BranchComparison> comparisons = new ArrayList<>();
+      for (Ref ref: resolver.getGit(token).branchList().call()) {
+        if (ref.getName().equals("HEAD")) {
+          continue;
+        }
+
+        RevCommit tip = walk.parseCommit(ref.getObjectId());
+        int ahead;
+        int behind;
+        if (baseReachables != null) {
+          BitmapBuilder tipReachables = findReachables(reader, bitmapIndex, tip);
+          ahead
+            = countCommits(bitmapIndex.newBitmapBuilder().or(tipReachables).andNot(baseReachables));
+          behind
+            = countCommits(bitmapIndex.newBitmapBuilder().or(baseReachables).andNot(tipReachables));
+        }
+        else {
+          walk.resetRetain(inBase);
+          int[] counts = markReachables(walk, tip, seen, inBase);
+          ahead = counts[0];
+          behind = baseCount - counts[1];
+        }
+        RevCommit mergeBase = findMergeBase(walk, tip, base);
+        comparisons.add(
+          new BranchComparison(
+            ref.getName(),
+            tip.getName(),
+            baseRef.getName(),
+            mergeBase != null ? mergeBase.getName() : null,
+            ahead,
+            behind
+          )
+        );
+      }
+      return comparisons.toArray(new BranchComparison[comparisons.size()]);
+    } catch (MissingObjectException | IncorrectObjectTypeException e) {
+      String message
+        = new StringBuilder()
+            .append("Failed to compare branches in the repository ")
+            .append(token)
+            .append(" with ")
+            .append(baseName)
+            .append(". A branch doesn't point to a commit.")
+            .toString();
+      LOG.error(message, e);
+      throw new DaoException(message, e);
+    } catch (GitAPIException e) {
+      String message
+        = new StringBuilder()
+            .append("Failed to compare branches in the repository ")
+            .append(token)
+            .append(" due to an error of the Git command.")
+            .toString();
+      LOG.error(message, e);
+      throw new DaoException(message, e);
+    } catch (IOException e) {
+      String message
+        = new StringBuilder()
+            .append("Failed to compare branches in the repository ")
+            .append(token)
+            .append(" due to an I/O error.")
+            .toString();
+      LOG.error(message, e);
+      throw new DaoException(message, e);
+    }
+  }
+
+  /**
+   * Find all objects reachable from the given commit using the bitmap index.
+   * Only the commits between the given one and the nearest commits with bitmaps are walked.
+   */
+  private BitmapBuilder findReachables(
+    ObjectReader reader, BitmapIndex bitmapIndex, RevCommit commit
+  ) throws IOException {
+    try (ObjectWalk objectWalk = new ObjectWalk(reader)) {
+      return new BitmapWalker(objectWalk, bitmapIndex, NullProgressMonitor.INSTANCE)
+               .findObjects(Collections.singleton(commit), null, true);
+    }
+  }
+
+  private int countCommits(BitmapBuilder bitmap) {
+    int count = 0;
+    for (BitmapObject obj: bitmap) {
+      if (obj.getType() == Constants.OBJ_COMMIT) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Mark all commits reachable from the start with the seen flag by walking the history, and
+   * count them. Unlike RevWalk with uninteresting commits, this never miscounts commits with
+   * skewed or equal commit times.
+   *
+   * @return an array of the count of the commits without the base flag and the count of ones
+   *         with the base flag.
+   */
+  private int[] markReachables(
+    RevWalk walk, RevCommit start, RevFlag seen, RevFlag base
+  ) throws IOException {
+    int[] counts = new int[2];
+    Deque<RevCommit> stack = new ArrayDeque<>();
+    stack.push(start);
+    while (!stack.isEmpty()) {
+      RevCommit commit = stack.pop();
+      if (commit.has(seen)) {
+        continue;
+      }
+      boolean inBase = commit.has(base);
+      commit.add(seen);
+      walk.parseHeaders(commit);
+      counts[inBase ? 1 : 0]++;
+      for (RevCommit parent: commit.getParents()) {
+        if (!parent.has(seen)) {
+          stack.push(parent);
+        }
+      }
+    }
+    return counts;
+  }
+
+  private RevCommit findMergeBase(RevWalk walk, RevCommit a, RevCommit b) throws IOException {
+    walk.reset();
+    walk.setRevFilter(RevFilter.MERGE_BASE);
+    walk.markStart(a);
+    walk.markStart(b);
+    return walk.next();
   }
 
   @Override
   public Tag[] getTags(String token) {
+    return getTags(token, Tag.FIELDS);
+  }
+
+  @Override
+  public Tag[] getTags(String token, FieldSet fields) {
+    Git git = resolver.getGit(token);
+    // Peeling a tag which isn't packed reads its tag object, so do it only if needed.
+    boolean needsPeel = fields.contains("tagObjectId") || fields.contains("referentId");
+    long start = RequestTimings.start();
     try {
-      return StreamSupport.stream(resolver.getGit(token).tagList().call().spliterator(), false)
-               .map(this::convertToTag)
-               .toArray(Tag[]::new);
+      List<Tag> tags = new ArrayList<>();
+      for (Ref ref: git.tagList().call()) {
+        if (needsPeel && !ref.isPeeled()) {
+          ref = git.getRepository().getRefDatabase().peel(ref);
+        }
+        tags.add(convertToTag(ref, fields));
+      }
+      return tags.toArray(new Tag[tags.size()]);
+    } catch (IOException e) {
+      String message
+        = new StringBuilder()
+            .append("Failed to get tags in the repository ")
+            .append(token)
+            .append(" due to an I/O error.")
+            .toString();
+      LOG.error(message, e);
+      throw new DaoException(message, e);
     } catch (GitAPIException e) {
       String message
         = new StringBuilder()
@@ -89,24 +356,39 @@ public final class ReferenceDaoImpl implements ReferenceDao {
             .toString();
       LOG.error(message, e);
       throw new DaoException(message, e);
+    } finally {
+      RequestTimings.record(RequestTimings.WALK, start);
     }
   }
 
   /**
    * this method converts a {@link Ref} object to {@link Tag} object.
    *
-   * @param ref a {@link Ref} object representing a tag.
+   * @param ref a {@link Ref} object representing a tag, which is peeled if tagObjectId or
+   *        referentId is in fields.
+   * @param fields the fields to set to the {@link Tag} object.
    * @return a new {@link Tag} instance.
    */
-  private Tag convertToTag(Ref ref) {
+  private Tag convertToTag(Ref ref, FieldSet fields) {
+    String name = fields.contains("name") ? ref.getName() : null;
     ObjectId peeledObjId = ref.getPeeledObjectId();
     if (peeledObjId == null) {
       // lightweight tag
-      return new Tag(ref.getName(), null, ref.getObjectId().getName());
+      return new Tag(
+               fields,
+               name,
+               null,
+               fields.contains("referentId") ? ref.getObjectId().getName() : null
+             );
     }
     else {
       // annotated tag
-      return new Tag(ref.getName(), ref.getObjectId().getName(), peeledObjId.getName());
+      return new Tag(
+               fields,
+               name,
+               fields.contains("tagObjectId") ? ref.getObjectId().getName() : null,
+               fields.contains("referentId") ? peeledObjId.getName() : null
+             );
     }
   }
 
@@ -144,6 +426,11 @@ public final class ReferenceDaoImpl implements ReferenceDao {
       .toArray(SymbolicReference[]::new);
   }
 
+  @Override
+  public String getRefsSnapshotId(String token) {
+    return resolver.getRefsSnapshotId(token);
+  }
+
   @Override
   public String getContents(String token, String refFullName) {
     File gitDir = resolver.getRepository(token).getDirectory();
@@ -190,4 +477,19 @@ public final class ReferenceDaoImpl implements ReferenceDao {
     }
   }
 
+  private static final class ComparisonCache {
+
+    private final String snapshotId;
+
+    /*
+     * Mapping from base branch names to comparisons.
+     */
+    private final Map<String, BranchComparison[]> comparisons = new ConcurrentHashMap<>();
+
+    private ComparisonCache(String snapshotId) {
+      this.snapshotId = snapshotId;
+    }
+
+  }
+
 }
@@ -12,7 +12,10 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
+import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.dircache.DirCache;
 import org.eclipse.jgit.dircache.DirCacheEntry;
 import org.eclipse.jgit.errors.CorruptObjectException;
@@ -25,6 +28,8 @@ import org.springframework.stereotype.Repository;
 import com.github.kaitoy.goslings.server.BeanQualifiers;
 import com.github.kaitoy.goslings.server.dao.DaoException;
 import com.github.kaitoy.goslings.server.dao.RepositoryDao;
+import com.github.kaitoy.goslings.server.metrics.RequestTimings;
+import com.github.kaitoy.goslings.server.resource.FieldSet;
 import com.github.kaitoy.goslings.server.resource.Index;
 import com.github.kaitoy.goslings.server.resource.Index.IndexEntry;
 
@@ -45,6 +50,16 @@ public final class RepositoryDaoImpl implements RepositoryDao {
     return resolver.getToken(uri);
   }
 
+  @Override
+  public String computeToken(String uri) {
+    return resolver.computeToken(uri);
+  }
+
+  @Override
+  public boolean isReady(String token) {
+    return resolver.isReady(token);
+  }
+
   @Override
   public long getIndexLastModified(String token) {
     try {
@@ -74,24 +89,36 @@ public final class RepositoryDaoImpl implements RepositoryDao {
 
   @Override
   public Index getIndex(String token) {
+    return getIndex(token, IndexEntry.FIELDS);
+  }
+
+  @Override
+  public Index getIndex(String token, FieldSet fields) {
+    Git git = resolver.getGit(token);
+    long start = RequestTimings.start();
     try {
-      DirCache index = resolver.getRepository(token).readDirCache();
+      DirCache index = readIndex(token, git);
       int numEntries = index.getEntryCount();
       List<IndexEntry> entries = new ArrayList<>(numEntries);
       for (int i = 0; i < numEntries; i++) {
-        DirCacheEntry dce = index.getEntry(i);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        dce.getFileMode().copyTo(baos);
-        entries.add(
-          new IndexEntry(
-            dce.getObjectId().getName(),
-            dce.getPathString(),
-            baos.toString(),
-            dce.getStage()
-          )
-        );
+        entries.add(convertToIndexEntry(index.getEntry(i), fields));
       }
       return new Index(entries.toArray(new IndexEntry[numEntries]));
+    } finally {
+      RequestTimings.record(RequestTimings.PARSE, start);
+    }
+  }
+
+  @Override
+  public Stream<IndexEntry> streamIndexEntries(String token) {
+    DirCache index = readIndex(token, resolver.getGit(token));
+    return IntStream.range(0, index.getEntryCount())
+             .mapToObj(i -> convertToIndexEntry(index.getEntry(i), IndexEntry.FIELDS));
+  }
+
+  private DirCache readIndex(String token, Git git) {
+    try {
+      return git.getRepository().readDirCache();
     } catch (NoWorkTreeException e) {
       String message
         = new StringBuilder()
@@ -120,7 +147,27 @@ public final class RepositoryDaoImpl implements RepositoryDao {
       LOG.error(message, e);
       throw new DaoException(message, e);
     }
+  }
 
+  private IndexEntry convertToIndexEntry(DirCacheEntry dce, FieldSet fields) {
+    String mode = null;
+    if (fields.contains("mode")) {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      try {
+        dce.getFileMode().copyTo(baos);
+      } catch (IOException e) {
+        // Never happens with ByteArrayOutputStream.
+        throw new AssertionError(e);
+      }
+      mode = baos.toString();
+    }
+    return new IndexEntry(
+             fields,
+             fields.contains("id") ? dce.getObjectId().getName() : null,
+             fields.contains("path") ? dce.getPathString() : null,
+             mode,
+             fields.contains("stage") ? dce.getStage() : 0
+           );
   }
 
   @Override
@@ -0,0 +1,126 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.dao.jgit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * This class periodically removes repositories from the repositories directory in
+ * least-recently-used order to keep the total size of them under the quota.
+ * Repositories which haven't been accessed for a long time are removed regardless of the quota.
+ *
+ * @author Kaito Yamada
+ */
+@Component
+@ConditionalOnProperty(
+  name="com.github.kaitoy.goslings.server.backgroundTasks.enabled",
+  matchIfMissing=true
+)
+public final class RepositoryEvictor {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RepositoryEvictor.class);
+  private static final RepositoryResolver resolver = RepositoryResolver.getInstance();
+
+  private final long quota;
+  private final long maxIdleTime;
+  private final long minIdleTime;
+
+  /**
+   * @param quota the maximum total size in bytes of the repositories. 0 means unlimited.
+   * @param maxIdleTime the time in milliseconds after which an unaccessed repository is removed
+   *        regardless of the quota. 0 means never.
+   * @param minIdleTime the time in milliseconds a repository has to be left unaccessed to be
+   *        removed.
+   */
+  public RepositoryEvictor(
+    @Value("${com.github.kaitoy.goslings.server.eviction.quota:0}") long quota,
+    @Value("${com.github.kaitoy.goslings.server.eviction.maxIdleTime:0}") long maxIdleTime,
+    @Value("${com.github.kaitoy.goslings.server.eviction.minIdleTime:600000}") long minIdleTime
+  ) {
+    this.quota = quota;
+    this.maxIdleTime = maxIdleTime;
+    this.minIdleTime = minIdleTime;
+  }
+
+  /**
+   * Measure the repositories and remove ones that exceed the quota or have been idle too long.
+   */
+  @Scheduled(
+    fixedDelayString = "${com.github.kaitoy.goslings.server.eviction.checkInterval:300000}"
+  )
+  void evict() {
+    long now = System.currentTimeMillis();
+    List<String> candidates = new ArrayList<>();
+    long total = 0L;
+    for (String token: resolver.getStoredTokens()) {
+      RepositoryUsage usage = resolver.getUsage(token);
+      if (maxIdleTime > 0 && now - usage.getLastAccessTime() > maxIdleTime) {
+        if (evict(token)) {
+          continue;
+        }
+      }
+
+      try {
+        usage.setDiskUsage(resolver.measureDiskUsage(token));
+      } catch (IOException e) {
+        LOG.warn("Failed to measure the size of the repository {}.", token, e);
+      }
+      total += usage.getDiskUsage();
+      candidates.add(token);
+    }
+
+    if (quota > 0 && total > quota) {
+      LOG.info("Repositories use {} bytes, which exceeds the quota {}.", total, quota);
+      candidates.sort(
+        Comparator.comparingLong(token -> resolver.getUsage(token).getLastAccessTime())
+      );
+      for (Iterator<String> itr = candidates.iterator(); itr.hasNext() && total > quota;) {
+        String token = itr.next();
+        long size = resolver.getUsage(token).getDiskUsage();
+        if (size != 0L && evict(token)) {
+          total -= size;
+        }
+      }
+      if (total > quota) {
+        LOG.warn("Repositories still use {} bytes, which exceeds the quota {}.", total, quota);
+      }
+    }
+
+    try {
+      resolver.deleteOrphanLockFiles();
+    } catch (IOException e) {
+      LOG.warn("Failed to delete orphan lock files.", e);
+    }
+  }
+
+  private boolean evict(String token) {
+    try {
+      boolean evicted = resolver.evict(token, minIdleTime);
+      if (evicted) {
+        LOG.info("Evicted the repository {}.", token);
+      }
+      return evicted;
+    } catch (IOException e) {
+      LOG.warn("Failed to evict the repository {}.", token, e);
+      return false;
+    }
+  }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.dao.jgit;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.github.kaitoy.goslings.server.dao.DaoException;
+
+/**
+ * This class periodically fetches updates into clones of remote repositories.
+ * The interval of fetches is adjusted for each repository: it gets shorter when a fetch brings
+ * updates and longer when it doesn't, and it's stretched for repositories that haven't been
+ * accessed since the last fetch.
+ *
+ * @author Kaito Yamada
+ */
+@Component
+@ConditionalOnProperty(
+  name="com.github.kaitoy.goslings.server.backgroundTasks.enabled",
+  matchIfMissing=true
+)
+public final class RepositoryFetcher {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RepositoryFetcher.class);
+  private static final RepositoryResolver resolver = RepositoryResolver.getInstance();
+  private static final int IDLE_INTERVAL_FACTOR = 4;
+
+  private final Map<String, Schedule> schedules = new ConcurrentHashMap<>();
+  private final Set<String> fetchingTokens = ConcurrentHashMap.newKeySet();
+  private final boolean enabled;
+  private final long minInterval;
+  private final long maxInterval;
+  private final ExecutorService executor;
+
+  /**
+   * @param enabled whether to fetch clones periodically.
+   * @param minInterval the minimum interval of fetches for a repository in milliseconds.
+   * @param maxInterval the maximum interval of fetches for a repository in milliseconds.
+   * @param concurrency the maximum number of fetches running at the same time.
+   */
+  public RepositoryFetcher(
+    @Value("${com.github.kaitoy.goslings.server.fetch.enabled:true}") boolean enabled,
+    @Value("${com.github.kaitoy.goslings.server.fetch.minInterval:60000}") long minInterval,
+    @Value("${com.github.kaitoy.goslings.server.fetch.maxInterval:3600000}") long maxInterval,
+    @Value("${com.github.kaitoy.goslings.server.fetch.concurrency:2}") int concurrency
+  ) {
+    if (minInterval <= 0 || maxInterval < minInterval) {
+      throw new IllegalArgumentException(
+              "Invalid fetch intervals. minInterval: " + minInterval
+                + ", maxInterval: " + maxInterval
+            );
+    }
+    this.enabled = enabled;
+    this.minInterval = minInterval;
+    this.maxInterval = maxInterval;
+    this.executor = Executors.newFixedThreadPool(concurrency, r -> {
+      Thread t = new Thread(r, "goslings-fetcher");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Submit fetches for the clones whose next fetch time has come.
+   * The number of running fetches is limited by the concurrency of the executor, and
+   * a clone is never fetched by more than one thread at the same time.
+   */
+  @Scheduled(fixedDelayString = "${com.github.kaitoy.goslings.server.fetch.checkInterval:10000}")
+  void submitDueFetches() {
+    if (!enabled) {
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    for (String token: resolver.getReadyTokens()) {
+      if (!resolver.isClone(token)) {
+        continue;
+      }
+
+      Schedule schedule = schedules.computeIfAbsent(token, t -> new Schedule(now, minInterval));
+      RepositoryUsage usage = resolver.getUsage(token);
+      if (usage.getLastAccessTime() > schedule.lastFetchTime) {
+        // The repo has been accessed after the last fetch, so it shouldn't wait for
+        // the stretched idle interval.
+        schedule.nextFetchTime
+          = Math.min(schedule.nextFetchTime, schedule.lastFetchTime + schedule.interval);
+      }
+      if (schedule.nextFetchTime > now || !fetchingTokens.add(token)) {
+        continue;
+      }
+
+      executor.execute(() -> {
+        try {
+          fetch(token, schedule);
+        } finally {
+          fetchingTokens.remove(token);
+        }
+      });
+    }
+    schedules.keySet().retainAll(resolver.getReadyTokens());
+  }
+
+  /**
+   * @return the number of repositories being fetched or waiting for a fetch.
+   */
+  int getPendingFetchCount() {
+    return fetchingTokens.size();
+  }
+
+  private void fetch(String token, Schedule schedule) {
+    long accessCount = resolver.getUsage(token).getAccessCount();
+    boolean accessed = accessCount != schedule.lastAccessCount;
+    boolean updated = false;
+    try {
+      updated = resolver.fetch(token);
+      LOG.debug("Fetched the repository {}. Updated: {}", token, updated);
+    } catch (DaoException e) {
+      LOG.warn("Failed to fetch the repository {}.", token, e);
+    }
+
+    if (updated) {
+      schedule.interval = Math.max(minInterval, schedule.interval / 2);
+    }
+    else {
+      schedule.interval = Math.min(maxInterval, schedule.interval * 2);
+    }
+
+    long now = System.currentTimeMillis();
+    long delay
+      = accessed
+          ? schedule.interval
+          : Math.min(maxInterval, schedule.interval * IDLE_INTERVAL_FACTOR);
+    schedule.lastFetchTime = now;
+    schedule.lastAccessCount = accessCount;
+    schedule.nextFetchTime = now + delay;
+  }
+
+  /**
+   * Stop fetches.
+   */
+  @PreDestroy
+  void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private static final class Schedule {
+
+    private volatile long interval;
+    private volatile long lastFetchTime;
+    private volatile long lastAccessCount;
+    private volatile long nextFetchTime;
+
+    private Schedule(long now, long interval) {
+      this.interval = interval;
+      this.lastFetchTime = now;
+      this.nextFetchTime = now + interval;
+    }
+
+  }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.dao.jgit;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.BaseStream;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import com.github.kaitoy.goslings.server.dao.ObjectDao;
+import com.github.kaitoy.goslings.server.dao.ReferenceDao;
+import com.github.kaitoy.goslings.server.dao.RepositoryDao;
+
+/**
+ * This wraps the JGit DAO beans with proxies which lease the repository specified by the token,
+ * i.e. the first argument, for the whole of every DAO method call, so that the repository is
+ * never evicted while it's read. A lease for a call which returns a stream is held until the
+ * stream is closed.
+ *
+ * @author Kaito Yamada
+ */
+@Component
+public final class RepositoryLeasePostProcessor implements BeanPostProcessor {
+
+  private static final Class<?>[] DAO_INTERFACES
+    = new Class<?>[] { ObjectDao.class, ReferenceDao.class, RepositoryDao.class };
+  private static final RepositoryResolver resolver = RepositoryResolver.getInstance();
+
+  /*
+   * Methods which take a URI instead of a token, or which don't read the repository.
+   */
+  private static final Set<String> UNLEASED_METHODS
+    = new HashSet<>(Arrays.asList("getToken", "computeToken", "isReady"));
+
+  @Override
+  public Object postProcessBeforeInitialization(Object bean, String beanName) {
+    return bean;
+  }
+
+  @Override
+  public Object postProcessAfterInitialization(Object bean, String beanName) {
+    for (Class<?> daoInterface: DAO_INTERFACES) {
+      if (daoInterface.isInstance(bean)) {
+        ProxyFactory factory = new ProxyFactory(bean);
+        factory.addAdvice(new LeasingInterceptor());
+        return factory.getProxy();
+      }
+    }
+    return bean;
+  }
+
+  private static final class LeasingInterceptor implements MethodInterceptor {
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+      Object[] args = invocation.getArguments();
+      if (
+        args.length == 0
+        || !(args[0] instanceof String)
+        || UNLEASED_METHODS.contains(invocation.getMethod().getName())
+      ) {
+        return invocation.proceed();
+      }
+
+      RepositoryLeases.Lease lease = resolver.lease((String) args[0]);
+      boolean transferred = false;
+      try {
+        Object result = invocation.proceed();
+        if (result instanceof BaseStream) {
+          transferred = true;
+          return ((BaseStream<?, ?>) result).onClose(lease::close);
+        }
+        return result;
+      } finally {
+        if (!transferred) {
+          lease.close();
+        }
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.dao.jgit;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reference counts of repositories in use, which keep them from being evicted.
+ * Any number of leases can be held for a token at the same time, while an exclusion can be
+ * taken only when no lease is held, and blocks new leases until it's closed.
+ * Unlike {@link TokenLocks}, a lease can be released by a thread other than the one which
+ * acquired it, so that it can be held by a stream consumed on another thread.
+ * An entry for a token exists only while any lease or exclusion is held for it.
+ *
+ * @author Kaito Yamada
+ */
+final class RepositoryLeases {
+
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+  /**
+   * Acquire a lease for the given token, waiting while the token is excluded.
+   *
+   * @param token token
+   * @return a lease which is released when closed. Never null.
+   */
+  Lease acquire(String token) {
+    while (true) {
+      Entry entry = entries.compute(token, (k, e) -> {
+        Entry r = e != null ? e : new Entry(false);
+        if (!r.exclusive) {
+          r.users++;
+        }
+        return r;
+      });
+      if (!entry.exclusive) {
+        return new Lease(token);
+      }
+      entry.released.join();
+    }
+  }
+
+  /**
+   * Exclude leases for the given token only if no lease is held for it.
+   *
+   * @param token token
+   * @return an exclusion which lets leases be acquired again when closed, or null if any lease
+   *         is held or the token is already excluded.
+   */
+  Exclusion tryExclude(String token) {
+    Entry entry = new Entry(true);
+    if (entries.putIfAbsent(token, entry) != null) {
+      return null;
+    }
+    return new Exclusion(token, entry);
+  }
+
+  private void release(String token) {
+    entries.computeIfPresent(token, (k, entry) -> --entry.users == 0 ? null : entry);
+  }
+
+  private static final class Entry {
+
+    private final boolean exclusive;
+    private final CompletableFuture<Void> released = new CompletableFuture<>();
+
+    // guarded by the bin lock of entries
+    private int users = 0;
+
+    private Entry(boolean exclusive) {
+      this.exclusive = exclusive;
+    }
+
+  }
+
+  /**
+   * A holder of a reference to a repository. Closing it more than once has no effect.
+   *
+   * @author Kaito Yamada
+   */
+  final class Lease implements AutoCloseable {
+
+    private final String token;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private Lease(String token) {
+      this.token = token;
+    }
+
+    @Override
+    public void close() {
+      if (closed.compareAndSet(false, true)) {
+        release(token);
+      }
+    }
+
+  }
+
+  /**
+   * A holder of exclusive access to a repository.
+   *
+   * @author Kaito Yamada
+   */
+  final class Exclusion implements AutoCloseable {
+
+    private final String token;
+    private final Entry entry;
+
+    private Exclusion(String token, Entry entry) {
+      this.token = token;
+      this.entry = entry;
+    }
+
+    @Override
+    public void close() {
+      entries.remove(token, entry);
+      entry.released.complete(null);
+    }
+
+  }
+
+}
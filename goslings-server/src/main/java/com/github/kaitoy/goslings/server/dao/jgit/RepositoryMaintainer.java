@@ -0,0 +1,185 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.dao.jgit;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.github.kaitoy.goslings.server.dao.DaoException;
+
+/**
+ * This class periodically runs git gc on idle repositories whose loose objects, pack files, or
+ * loose refs have piled up, or which don't have a reachability bitmap index yet.
+ * A gc consolidates objects into a single pack with a bitmap index and packs refs, which makes
+ * object reads and reachability walks faster.
+ * By default, only clones of remote repositories are maintained since symlinked local
+ * repositories belong to users.
+ *
+ * @author Kaito Yamada
+ */
+@Component
+@ConditionalOnProperty(
+  name="com.github.kaitoy.goslings.server.backgroundTasks.enabled",
+  matchIfMissing=true
+)
+public final class RepositoryMaintainer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RepositoryMaintainer.class);
+  private static final RepositoryResolver resolver = RepositoryResolver.getInstance();
+
+  private final Map<String, Long> lastGcTimes = new ConcurrentHashMap<>();
+  private final AtomicBoolean running = new AtomicBoolean();
+  private final boolean enabled;
+  private final boolean includeLocal;
+  private final long idleTime;
+  private final long minInterval;
+  private final long looseObjectsThreshold;
+  private final long packFilesThreshold;
+  private final long looseRefsThreshold;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "goslings-maintainer");
+    t.setDaemon(true);
+    t.setPriority(Thread.MIN_PRIORITY);
+    return t;
+  });
+
+  /**
+   * @param enabled whether to run gc on repositories.
+   * @param includeLocal whether to run gc also on symlinked local repositories.
+   * @param idleTime the time in milliseconds a repository has to be left unaccessed to be
+   *        maintained.
+   * @param minInterval the minimum interval in milliseconds of gc for a repository.
+   * @param looseObjectsThreshold the number of loose objects above which gc runs.
+   * @param packFilesThreshold the number of pack files above which gc runs.
+   * @param looseRefsThreshold the number of loose refs above which gc runs.
+   */
+  public RepositoryMaintainer(
+    @Value("${com.github.kaitoy.goslings.server.maintenance.enabled:true}")
+    boolean enabled,
+    @Value("${com.github.kaitoy.goslings.server.maintenance.includeLocal:false}")
+    boolean includeLocal,
+    @Value("${com.github.kaitoy.goslings.server.maintenance.idleTime:300000}")
+    long idleTime,
+    @Value("${com.github.kaitoy.goslings.server.maintenance.minInterval:3600000}")
+    long minInterval,
+    @Value("${com.github.kaitoy.goslings.server.maintenance.looseObjectsThreshold:1000}")
+    long looseObjectsThreshold,
+    @Value("${com.github.kaitoy.goslings.server.maintenance.packFilesThreshold:4}")
+    long packFilesThreshold,
+    @Value("${com.github.kaitoy.goslings.server.maintenance.looseRefsThreshold:100}")
+    long looseRefsThreshold
+  ) {
+    this.enabled = enabled;
+    this.includeLocal = includeLocal;
+    this.idleTime = idleTime;
+    this.minInterval = minInterval;
+    this.looseObjectsThreshold = looseObjectsThreshold;
+    this.packFilesThreshold = packFilesThreshold;
+    this.looseRefsThreshold = looseRefsThreshold;
+  }
+
+  /**
+   * Submit a maintenance round unless the previous one is still running.
+   */
+  @Scheduled(
+    fixedDelayString = "${com.github.kaitoy.goslings.server.maintenance.checkInterval:60000}"
+  )
+  void submitMaintenance() {
+    if (!enabled || !running.compareAndSet(false, true)) {
+      return;
+    }
+    executor.execute(() -> {
+      try {
+        maintain();
+      } finally {
+        running.set(false);
+      }
+    });
+  }
+
+  private void maintain() {
+    lastGcTimes.keySet().retainAll(resolver.getReadyTokens());
+    for (String token: resolver.getReadyTokens()) {
+      if (Thread.currentThread().isInterrupted()) {
+        return;
+      }
+      if (!includeLocal && !resolver.isClone(token)) {
+        continue;
+      }
+
+      long now = System.currentTimeMillis();
+      if (now - resolver.getUsage(token).getLastAccessTime() < idleTime) {
+        continue;
+      }
+      Long lastGcTime = lastGcTimes.get(token);
+      if (lastGcTime != null && now - lastGcTime < minInterval) {
+        continue;
+      }
+
+      try {
+        Properties stats = resolver.getStatistics(token);
+        boolean hasBitmap
+          = resolver.getPackIndexFiles(token).stream()
+              .anyMatch(file -> file.toString().endsWith(".bitmap"));
+        if (!needsGc(stats, hasBitmap)) {
+          continue;
+        }
+
+        LOG.info("Running gc on the repository {}. Statistics: {}", token, stats);
+        long start = System.currentTimeMillis();
+        resolver.gc(token);
+        LOG.info(
+          "Finished gc on the repository {} in {} ms. Statistics: {}",
+          token, System.currentTimeMillis() - start, resolver.getStatistics(token)
+        );
+      } catch (DaoException e) {
+        LOG.warn("Failed to maintain the repository {}.", token, e);
+      }
+      lastGcTimes.put(token, System.currentTimeMillis());
+    }
+  }
+
+  private boolean needsGc(Properties stats, boolean hasBitmap) {
+    long looseObjects = getLong(stats, "numberOfLooseObjects");
+    long packedObjects = getLong(stats, "numberOfPackedObjects");
+    long packFiles = getLong(stats, "numberOfPackFiles");
+    long looseRefs = getLong(stats, "numberOfLooseRefs");
+    return looseObjects > looseObjectsThreshold
+             || packFiles > packFilesThreshold
+             || looseRefs > looseRefsThreshold
+             || (!hasBitmap && packedObjects + looseObjects > 0);
+  }
+
+  private long getLong(Properties stats, String key) {
+    Object value = stats.get(key);
+    return value instanceof Number ? ((Number) value).longValue() : 0L;
+  }
+
+  /**
+   * Stop maintenance.
+   */
+  @PreDestroy
+  void shutdown() {
+    executor.shutdownNow();
+  }
+
+}
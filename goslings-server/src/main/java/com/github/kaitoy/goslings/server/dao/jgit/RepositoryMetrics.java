@@ -0,0 +1,67 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.dao.jgit;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * This registers gauges of the state of repositories handled by the JGit DAOs.
+ * Each gauge only reads the size of a concurrent collection, so they are cheap to read.
+ *
+ * @author Kaito Yamada
+ */
+@Component
+public final class RepositoryMetrics {
+
+  private static final RepositoryResolver resolver = RepositoryResolver.getInstance();
+  private static final String METRIC_PREFIX = "goslings.repositories.";
+
+  @Autowired
+  private MetricRegistry registry;
+
+  // null if background tasks are disabled.
+  @Autowired(required=false)
+  private RepositoryFetcher fetcher;
+
+  @PostConstruct
+  void registerGauges() {
+    registry.register(
+      METRIC_PREFIX + "ready", (Gauge<Integer>) resolver::getReadyTokenCount
+    );
+    registry.register(
+      METRIC_PREFIX + "loaded", (Gauge<Integer>) resolver::getLoadedRepositoryCount
+    );
+    registry.register(
+      METRIC_PREFIX + "cloneQueue", (Gauge<Integer>) resolver::getInFlightTokenCount
+    );
+    if (fetcher != null) {
+      registry.register(
+        METRIC_PREFIX + "fetchQueue", (Gauge<Integer>) fetcher::getPendingFetchCount
+      );
+    }
+    registry.register(
+      METRIC_PREFIX + "locks", (Gauge<Integer>) resolver::getLockCount
+    );
+    registry.register(
+      METRIC_PREFIX + "caches.branchComparisons",
+      (Gauge<Integer>) ReferenceDaoImpl::getComparisonCacheSize
+    );
+    registry.register(
+      METRIC_PREFIX + "caches.commitTimeIndexes",
+      (Gauge<Integer>) ObjectDaoImpl::getCommitTimeIndexCount
+    );
+  }
+
+}
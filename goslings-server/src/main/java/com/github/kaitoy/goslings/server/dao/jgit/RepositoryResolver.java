@@ -10,35 +10,58 @@ package com.github.kaitoy.goslings.server.dao.jgit;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.channels.FileLock;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileBasedConfig;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.FetchResult;
+import org.eclipse.jgit.transport.TagOpt;
+import org.eclipse.jgit.util.FS;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.WeakReferenceMonitor;
 
 import com.github.kaitoy.goslings.server.dao.DaoException;
+import com.github.kaitoy.goslings.server.metrics.RequestTimings;
 
 /**
  * This class resolves tokens to Git repositories.
@@ -51,6 +74,9 @@ final class RepositoryResolver {
   private static final RepositoryResolver INSTANCE = new RepositoryResolver();
   private static final String REPOS_DIR_PROP = "com.github.kaitoy.goslings.server.reposDir";
   private static final String REPOS_DIR;
+  private static final String LOCK_FILE_SUFFIX = ".lock";
+  private static final String USAGES_FILE_NAME = "usages.properties";
+  private static final Pattern TOKEN_PATTERN = Pattern.compile("[0-9a-f]{40}");
 
   /*
    * Mapping from tokens to Git objects. (cache for Git objects.)
@@ -60,12 +86,46 @@ final class RepositoryResolver {
   /*
    * Cache for tokens that are ready to use.
    */
-  private static final Set<String> READY_TOKENS = Collections.synchronizedSet(new HashSet<>());
+  private static final Set<String> READY_TOKENS = ConcurrentHashMap.newKeySet();
 
   /*
-   * Mapping from tokens to lock objects (mutexes for git clone command for each repo).
+   * Mapping from tokens to futures of getToken calls in progress, which are shared by
+   * concurrent callers so that a repo is cloned only once.
    */
-  private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+  private static final Map<String, CompletableFuture<String>> IN_FLIGHT_TOKENS
+    = new ConcurrentHashMap<>();
+
+  /*
+   * Mutexes for git clone, fetch, and eviction for each repo.
+   */
+  private static final TokenLocks LOCKS = new TokenLocks();
+
+  /*
+   * Reference counts of repos in use, which keep them from being evicted.
+   */
+  private static final RepositoryLeases LEASES = new RepositoryLeases();
+
+  /*
+   * Mapping from tokens to usage statistics of the repositories.
+   */
+  private static final Map<String, RepositoryUsage> USAGES = new ConcurrentHashMap<>();
+
+  /*
+   * Mapping from tokens to URIs, which is used to restore evicted repositories.
+   */
+  private static final Map<String, String> URIS = new ConcurrentHashMap<>();
+
+  /*
+   * Listeners to be notified when the contents of a repository have changed.
+   */
+  private static final List<Consumer<String>> INVALIDATION_LISTENERS
+    = new CopyOnWriteArrayList<>();
+
+  /*
+   * Listeners to be notified when a repository has been removed.
+   */
+  private static final List<Consumer<String>> EVICTION_LISTENERS
+    = new CopyOnWriteArrayList<>();
 
   static {
     String reposDir = System.getProperty(REPOS_DIR_PROP);
@@ -97,19 +157,93 @@ final class RepositoryResolver {
    * @throws DaoException if any errors.
    */
   String getToken(String uri) {
+    // The fast path is keyed by the token, which is the same for all spellings of a URI (e.g.
+    // with credentials), and is cheap to compute, so that no cache keyed by URIs is needed.
     Token token = new Token(uri);
-    if (READY_TOKENS.contains(token.tokenString)) {
-      return token.tokenString;
+    String tokenString = token.tokenString;
+    if (READY_TOKENS.contains(tokenString)) {
+      URIS.putIfAbsent(tokenString, uri);
+      getUsage(tokenString).recordAccess();
+      return tokenString;
     }
 
-    if (token.isLocal) {
-      return processLocalRepository(token);
+    CompletableFuture<String> future = new CompletableFuture<>();
+    CompletableFuture<String> inFlight = IN_FLIGHT_TOKENS.putIfAbsent(tokenString, future);
+    if (inFlight != null) {
+      // Another thread is preparing the repo.
+      try {
+        return inFlight.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof DaoException) {
+          throw (DaoException) e.getCause();
+        }
+        throw new DaoException(e.getCause());
+      }
     }
-    else {
-      return processRemoteRepository(token);
+
+    try {
+      String result
+        = token.isLocal ? processLocalRepository(token) : processRemoteRepository(token);
+      // Recorded only on success so that URIs which failed (and credentials in them) are not
+      // kept.
+      URIS.putIfAbsent(result, uri);
+      future.complete(result);
+      return result;
+    } catch (RuntimeException e) {
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      IN_FLIGHT_TOKENS.remove(tokenString, future);
     }
   }
 
+  /**
+   * @param uri URI of the repository
+   * @return the token for the repository at the given URI, which is computed without preparing
+   *         the repository. Never null.
+   */
+  String computeToken(String uri) {
+    return new Token(uri).tokenString;
+  }
+
+  /**
+   * @param token token
+   * @return true if the repository specified by the given token is ready to use;
+   *         false otherwise.
+   */
+  boolean isReady(String token) {
+    return READY_TOKENS.contains(token);
+  }
+
+  /**
+   * @return the number of repositories that are ready to use.
+   */
+  int getReadyTokenCount() {
+    return READY_TOKENS.size();
+  }
+
+  /**
+   * @return the number of repositories opened and cached.
+   */
+  int getLoadedRepositoryCount() {
+    return GITS.size();
+  }
+
+  /**
+   * @return the number of per-repository mutexes held or waited for.
+   */
+  int getLockCount() {
+    return LOCKS.size();
+  }
+
+  /**
+   * @return the number of repositories being prepared (i.e. cloned, or so) by
+   *         {@link #getToken(String)}.
+   */
+  int getInFlightTokenCount() {
+    return IN_FLIGHT_TOKENS.size();
+  }
+
   private String processLocalRepository(Token token) {
     String tokenString = token.tokenString;
     String uri = token.uri;
@@ -148,32 +282,16 @@ final class RepositoryResolver {
     String tokenString = token.tokenString;
     String uri = token.uri;
     File repo = new File(REPOS_DIR, tokenString);
-    Path lockFilePath = Paths.get(repo.getAbsolutePath() + ".lock");
-
-    Object lock;
-    synchronized (LOCKS) {
-      lock = LOCKS.get(tokenString);
-      if (lock == null) {
-        lock = new Object();
-        LOCKS.put(tokenString, lock);
-      }
-    }
 
-    synchronized (lock) {
-      try (
-        FileChannel fc = FileChannel.open(
-                           lockFilePath,
-                           StandardOpenOption.CREATE,
-                           StandardOpenOption.WRITE
-                         );
-        FileLock fileLock = fc.lock()
-      ) {
+    try {
+      return runExclusively(tokenString, () -> {
         if (repo.exists()) {
           // Another process or thread has already cloned the repo.
           READY_TOKENS.add(tokenString);
           return tokenString;
         }
 
+        JfrEvents.CloneEvent event = JfrEvents.beginClone();
         Git git = Git.cloneRepository()
                     .setURI(uri)
                     .setBare(true)
@@ -181,21 +299,542 @@ final class RepositoryResolver {
                     .call();
         GITS.put(tokenString, git);
         READY_TOKENS.add(tokenString);
+        getUsage(tokenString).recordAccess();
+        JfrEvents.commit(event, tokenString, uri);
         return tokenString;
-      } catch (GitAPIException e) {
-        LOG.error("Failed to clone a repo {} due to: ", uri, e);
-        throw new DaoException(
-                "The server failed to clone the repository. Please confirm the URL: " + uri,
-                e
-              );
-      } catch (IOException e) {
-        LOG.error("Failed to lock a repo {} due to: ", uri, e);
-        throw new DaoException(
-                "The server failed to clone the repository due to an I/O error. URI: " + uri,
-                e
-              );
+      });
+    } catch (GitAPIException e) {
+      LOG.error("Failed to clone a repo {} due to: ", uri, e);
+      throw new DaoException(
+              "The server failed to clone the repository. Please confirm the URL: " + uri,
+              e
+            );
+    } catch (IOException e) {
+      LOG.error("Failed to lock a repo {} due to: ", uri, e);
+      throw new DaoException(
+              "The server failed to clone the repository due to an I/O error. URI: " + uri,
+              e
+            );
+    }
+  }
+
+  /**
+   * Run the given task holding the lock for the repository specified by the given token.
+   * The lock is held both in this process (by a mutex) and across processes
+   * (by a {@link FileLock} on the lock file next to the repository).
+   *
+   * @param tokenString token
+   * @param task task
+   * @return the value returned by the task.
+   * @throws IOException if failed to lock the repository or the task threw it.
+   * @throws GitAPIException if the task threw it.
+   */
+  private <T> T runExclusively(
+    String tokenString, ExclusiveTask<T> task
+  ) throws IOException, GitAPIException {
+    Path lockFilePath = Paths.get(REPOS_DIR, tokenString + LOCK_FILE_SUFFIX);
+    try (
+      TokenLocks.Lease lease = LOCKS.lock(tokenString);
+      FileChannel fc = FileChannel.open(
+                         lockFilePath,
+                         StandardOpenOption.CREATE,
+                         StandardOpenOption.WRITE
+                       );
+      FileLock fileLock = fc.lock()
+    ) {
+      return task.run();
+    }
+  }
+
+  /**
+   * Fetch updates from the remote repository into the clone specified by the given token.
+   * If any refs are updated, the listeners registered by
+   * {@link #addInvalidationListener(Consumer)} are notified.
+   * An evicted clone is not restored but skipped.
+   *
+   * @param token token
+   * @return true if any refs are updated by the fetch; false otherwise.
+   * @throws DaoException if any errors.
+   */
+  boolean fetch(String token) {
+    try {
+      boolean updated = runExclusively(token, () -> {
+        Git git = openStoredGit(token);
+        if (git == null) {
+          return false;
+        }
+
+        JfrEvents.FetchEvent event = JfrEvents.beginFetch();
+        FetchResult result
+          = git.fetch()
+              .setRemoveDeletedRefs(true)
+              .setTagOpt(TagOpt.FETCH_TAGS)
+              .call();
+        JfrEvents.commit(event, token, result.getTrackingRefUpdates().size());
+        return !result.getTrackingRefUpdates().isEmpty();
+      });
+      if (updated) {
+        invalidate(token);
+      }
+      return updated;
+    } catch (GitAPIException e) {
+      LOG.error("Failed to fetch a repo {} due to: ", token, e);
+      throw new DaoException("The server failed to fetch the repository: " + token, e);
+    } catch (IOException e) {
+      LOG.error("Failed to lock a repo {} due to: ", token, e);
+      throw new DaoException(
+              "The server failed to fetch the repository due to an I/O error: " + token,
+              e
+            );
+    }
+  }
+
+  /**
+   * Get statistics of the objects and refs stored in the repository specified by the given
+   * token, such as numberOfLooseObjects, numberOfPackFiles, numberOfBitmaps, and
+   * numberOfLooseRefs.
+   *
+   * @param token token
+   * @return statistics. Never null.
+   * @throws DaoException if any errors.
+   */
+  Properties getStatistics(String token) {
+    Git git = openStoredGit(token);
+    if (git == null) {
+      throw new DaoException("The repository has been evicted: " + token);
+    }
+    try {
+      return git.gc().getStatistics();
+    } catch (GitAPIException e) {
+      LOG.error("Failed to get statistics of a repo {} due to: ", token, e);
+      throw new DaoException("The server failed to inspect the repository: " + token, e);
+    }
+  }
+
+  /**
+   * Run git gc on the repository specified by the given token, which packs refs, consolidates
+   * objects into a single pack with a reachability bitmap index, and prunes loose objects.
+   * An evicted repository is not restored but skipped.
+   *
+   * @param token token
+   * @throws DaoException if any errors.
+   */
+  void gc(String token) {
+    try {
+      runExclusively(token, () -> {
+        Git git = openStoredGit(token);
+        return git != null ? git.gc().call() : null;
+      });
+    } catch (GitAPIException e) {
+      LOG.error("Failed to gc a repo {} due to: ", token, e);
+      throw new DaoException("The server failed to gc the repository: " + token, e);
+    } catch (IOException e) {
+      LOG.error("Failed to lock a repo {} due to: ", token, e);
+      throw new DaoException(
+              "The server failed to gc the repository due to an I/O error: " + token,
+              e
+            );
+    }
+  }
+
+  /**
+   * Get an ID of the current state of all the refs in the repository specified by the given
+   * token. The ID changes whenever any ref is created, deleted, or updated, so it can be used as
+   * a key of caches of data computed from refs.
+   *
+   * @param token token
+   * @return a snapshot ID. Never null.
+   * @throws DaoException if any errors.
+   */
+  String getRefsSnapshotId(String token) {
+    try {
+      List<Ref> refs = new ArrayList<>(openGit(token).getRepository().getRefDatabase().getRefs());
+      refs.sort(Comparator.comparing(Ref::getName));
+
+      MessageDigest md = MessageDigest.getInstance("SHA-1");
+      byte[] rawId = new byte[Constants.OBJECT_ID_LENGTH];
+      for (Ref ref: refs) {
+        md.update(ref.getName().getBytes(StandardCharsets.UTF_8));
+        md.update((byte) 0);
+        if (ref.isSymbolic()) {
+          md.update(ref.getTarget().getName().getBytes(StandardCharsets.UTF_8));
+        }
+        else if (ref.getObjectId() != null) {
+          ref.getObjectId().copyRawTo(rawId, 0);
+          md.update(rawId);
+        }
+        md.update((byte) '\n');
+      }
+      return ObjectId.fromRaw(md.digest()).getName();
+    } catch (IOException e) {
+      LOG.error("Failed to read refs of a repo {} due to: ", token, e);
+      throw new DaoException(
+              "The server failed to read refs of the repository due to an I/O error: " + token,
+              e
+            );
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError("Never gets here.");
+    }
+  }
+
+  /**
+   * @return tokens of the repositories that are ready to use. Never null.
+   */
+  Set<String> getReadyTokens() {
+    return new HashSet<>(READY_TOKENS);
+  }
+
+  /**
+   * @param token token
+   * @return true if the repository specified by the given token is a clone of a remote
+   *         repository; false if it's a symlink to a local one or doesn't exist.
+   */
+  boolean isClone(String token) {
+    return Files.isDirectory(Paths.get(REPOS_DIR, token), LinkOption.NOFOLLOW_LINKS);
+  }
+
+  /**
+   * @return tokens of the repositories stored in the repositories directory, including ones
+   *         which were stored before the server started. Never null.
+   */
+  List<String> getStoredTokens() {
+    List<String> tokens = new ArrayList<>();
+    String[] names = new File(REPOS_DIR).list();
+    if (names == null) {
+      return tokens;
+    }
+    for (String name: names) {
+      if (TOKEN_PATTERN.matcher(name).matches()) {
+        tokens.add(name);
       }
     }
+    return tokens;
+  }
+
+  /**
+   * @param token token
+   * @return the usage statistics of the repository specified by the given token. Never null.
+   */
+  RepositoryUsage getUsage(String token) {
+    return USAGES.computeIfAbsent(token, t -> new RepositoryUsage(getLastModified(t)));
+  }
+
+  /**
+   * Mark the repositories stored in the repositories directory as ready to use, so that
+   * the server doesn't need to check them again when their tokens are requested.
+   * This is supposed to be called on startup to take over repositories stored by
+   * the previous run.
+   *
+   * @return the tokens of the registered repositories. Never null.
+   */
+  List<String> registerStoredTokens() {
+    List<String> tokens = getStoredTokens();
+    for (String token: tokens) {
+      Path repo = Paths.get(REPOS_DIR, token);
+      try {
+        if (Files.isSymbolicLink(repo)) {
+          URIS.putIfAbsent(token, Files.readSymbolicLink(repo).toString());
+        }
+        else {
+          FileBasedConfig config
+            = new FileBasedConfig(new File(repo.toFile(), "config"), FS.DETECTED);
+          config.load();
+          String uri = config.getString("remote", "origin", "url");
+          if (uri != null) {
+            URIS.putIfAbsent(token, uri);
+          }
+        }
+      } catch (IOException | ConfigInvalidException e) {
+        LOG.warn("Failed to read the URI of a repo {}", repo, e);
+      }
+      READY_TOKENS.add(token);
+    }
+    return tokens;
+  }
+
+  /**
+   * Load the usage statistics saved by {@link #saveUsages()}.
+   *
+   * @throws IOException if an I/O error occurs.
+   */
+  void loadUsages() throws IOException {
+    Path usagesFile = Paths.get(REPOS_DIR, USAGES_FILE_NAME);
+    if (!Files.exists(usagesFile)) {
+      return;
+    }
+
+    Properties props = new Properties();
+    try (InputStream in = Files.newInputStream(usagesFile)) {
+      props.load(in);
+    }
+    for (String token: props.stringPropertyNames()) {
+      String[] values = props.getProperty(token).split(",");
+      try {
+        USAGES.putIfAbsent(
+          token,
+          new RepositoryUsage(Long.parseLong(values[1]), Long.parseLong(values[0]))
+        );
+      } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+        LOG.warn("Ignoring a broken usage entry of a repo {}", token);
+      }
+    }
+  }
+
+  /**
+   * Save the usage statistics of the repositories stored in the repositories directory
+   * into a file in the directory so that they can be loaded by {@link #loadUsages()} later.
+   *
+   * @throws IOException if an I/O error occurs.
+   */
+  void saveUsages() throws IOException {
+    Properties props = new Properties();
+    for (String token: getStoredTokens()) {
+      RepositoryUsage usage = USAGES.get(token);
+      if (usage != null) {
+        props.setProperty(token, usage.getAccessCount() + "," + usage.getLastAccessTime());
+      }
+    }
+
+    Path tmpFile = Files.createTempFile(Paths.get(REPOS_DIR), USAGES_FILE_NAME, ".tmp");
+    try (OutputStream out = Files.newOutputStream(tmpFile)) {
+      props.store(out, "Usages of repositories: token=accessCount,lastAccessTime");
+    }
+    Files.move(
+      tmpFile, Paths.get(REPOS_DIR, USAGES_FILE_NAME), StandardCopyOption.REPLACE_EXISTING
+    );
+  }
+
+  /**
+   * @param token token
+   * @return the paths of the pack index files of the repository specified by the given token.
+   *         Never null.
+   */
+  List<Path> getPackIndexFiles(String token) {
+    List<Path> indexFiles = new ArrayList<>();
+    File[] files
+      = Paths.get(REPOS_DIR, token, "objects", "pack").toFile()
+          .listFiles((dir, name) -> name.endsWith(".idx") || name.endsWith(".bitmap"));
+    if (files != null) {
+      for (File file: files) {
+        indexFiles.add(file.toPath());
+      }
+    }
+    return indexFiles;
+  }
+
+  private long getLastModified(String token) {
+    Path repo = Paths.get(REPOS_DIR, token);
+    try {
+      return Files.getLastModifiedTime(repo, LinkOption.NOFOLLOW_LINKS).toMillis();
+    } catch (IOException e) {
+      return System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * Measure the size of the repository specified by the given token in the repositories
+   * directory. The size of a symlink to a local repository is 0.
+   *
+   * @param token token
+   * @return the size in bytes.
+   * @throws IOException if an I/O error occurs.
+   */
+  long measureDiskUsage(String token) throws IOException {
+    Path repo = Paths.get(REPOS_DIR, token);
+    if (!Files.isDirectory(repo, LinkOption.NOFOLLOW_LINKS)) {
+      return 0L;
+    }
+
+    long[] size = new long[1];
+    Files.walkFileTree(repo, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        size[0] += attrs.size();
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    return size[0];
+  }
+
+  /**
+   * Remove the repository specified by the given token, i.e. a clone or a symlink, and its
+   * lock file from the repositories directory.
+   * A repository which is locked by another thread or process, which is leased by
+   * {@link #lease(String)}, or which has been accessed within the given time, is never removed.
+   * Leases requested during the removal wait for it to finish.
+   * An evicted repository is restored on the next access if the server knows its URI.
+   *
+   * @param token token
+   * @param minIdleTime the time in milliseconds the repository has to be left unaccessed to be
+   *        removed.
+   * @return true if the repository has been removed; false otherwise.
+   * @throws IOException if an I/O error occurs.
+   */
+  boolean evict(String token, long minIdleTime) throws IOException {
+    Path repo = Paths.get(REPOS_DIR, token);
+    Path lockFilePath = Paths.get(REPOS_DIR, token + LOCK_FILE_SUFFIX);
+    try (TokenLocks.Lease lease = LOCKS.tryLock(token)) {
+      if (lease == null) {
+        // Another thread is cloning or fetching the repo.
+        return false;
+      }
+      if (System.currentTimeMillis() - getUsage(token).getLastAccessTime() < minIdleTime) {
+        return false;
+      }
+
+      try (
+        RepositoryLeases.Exclusion exclusion = LEASES.tryExclude(token);
+        FileChannel fc = FileChannel.open(
+                           lockFilePath,
+                           StandardOpenOption.CREATE,
+                           StandardOpenOption.WRITE
+                         );
+        FileLock fileLock = fc.tryLock()
+      ) {
+        if (exclusion == null) {
+          // Another thread is reading the repo.
+          return false;
+        }
+        if (fileLock == null) {
+          // Another process is using the repo.
+          return false;
+        }
+
+        JfrEvents.EvictionEvent event = JfrEvents.beginEviction();
+        RepositoryUsage usage = getUsage(token);
+        READY_TOKENS.remove(token);
+        Git git = GITS.remove(token);
+        if (git != null) {
+          // Release pack files before deleting them.
+          git.getRepository().close();
+        }
+        delete(repo);
+        Files.deleteIfExists(lockFilePath);
+        USAGES.remove(token);
+        JfrEvents.commit(
+          event,
+          token,
+          usage.getDiskUsage(),
+          System.currentTimeMillis() - usage.getLastAccessTime()
+        );
+      }
+    }
+
+    invalidate(token);
+    for (Consumer<String> listener: EVICTION_LISTENERS) {
+      listener.accept(token);
+    }
+    return true;
+  }
+
+  /**
+   * Remove lock files which are left in the repositories directory without their repositories.
+   *
+   * @throws IOException if an I/O error occurs.
+   */
+  void deleteOrphanLockFiles() throws IOException {
+    String[] names = new File(REPOS_DIR).list();
+    if (names == null) {
+      return;
+    }
+    for (String name: names) {
+      if (!name.endsWith(LOCK_FILE_SUFFIX)) {
+        continue;
+      }
+      String token = name.substring(0, name.length() - LOCK_FILE_SUFFIX.length());
+      if (!TOKEN_PATTERN.matcher(token).matches()) {
+        continue;
+      }
+
+      Path lockFilePath = Paths.get(REPOS_DIR, name);
+      try (TokenLocks.Lease lease = LOCKS.tryLock(token)) {
+        if (
+          lease == null
+          || Files.exists(Paths.get(REPOS_DIR, token), LinkOption.NOFOLLOW_LINKS)
+        ) {
+          continue;
+        }
+        try (
+          FileChannel fc = FileChannel.open(lockFilePath, StandardOpenOption.WRITE);
+          FileLock fileLock = fc.tryLock()
+        ) {
+          if (fileLock != null) {
+            Files.deleteIfExists(lockFilePath);
+          }
+        }
+      }
+    }
+  }
+
+  private void delete(Path path) throws IOException {
+    if (Files.isSymbolicLink(path)) {
+      Files.deleteIfExists(path);
+      return;
+    }
+    if (!Files.exists(path)) {
+      return;
+    }
+
+    Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+        if (e != null) {
+          throw e;
+        }
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  /**
+   * Add a listener that is called with a token when the contents of the repository specified
+   * by the token have changed, so that caches built from the repository can be discarded.
+   *
+   * @param listener listener
+   */
+  void addInvalidationListener(Consumer<String> listener) {
+    INVALIDATION_LISTENERS.add(listener);
+  }
+
+  /**
+   * Add a listener that is called with a token when the repository specified by the token has
+   * been removed from the repositories directory, so that data kept across changes of the
+   * repository can be discarded.
+   *
+   * @param listener listener
+   */
+  void addEvictionListener(Consumer<String> listener) {
+    EVICTION_LISTENERS.add(listener);
+  }
+
+  /**
+   * Notify the listeners that the contents of the repository specified by the given token
+   * have changed.
+   *
+   * @param token token
+   */
+  void invalidate(String token) {
+    for (Consumer<String> listener: INVALIDATION_LISTENERS) {
+      listener.accept(token);
+    }
+  }
+
+  /**
+   * Lease the repository specified by the given token, which keeps it from being evicted until
+   * the lease is closed. The lease can be closed by any thread.
+   *
+   * @param token token
+   * @return a lease. Never null.
+   */
+  RepositoryLeases.Lease lease(String token) {
+    return LEASES.acquire(token);
   }
 
   /**
@@ -206,12 +845,74 @@ final class RepositoryResolver {
    * @throws DaoException if any errors.
    */
   Git getGit(String token) {
-    if (GITS.containsKey(token)) {
-      return GITS.get(token);
+    long start = RequestTimings.start();
+    try {
+      getUsage(token).recordAccess();
+      return openGit(token);
+    } finally {
+      RequestTimings.record(RequestTimings.REPO, start);
+    }
+  }
+
+  /**
+   * Get the {@link Git} instance which corresponds to the repository specified by the given token
+   * without recording an access to the repository.
+   *
+   * @param token token
+   * @return a {@link Git} instance. Never null.
+   * @throws DaoException if any errors.
+   */
+  Git openGit(String token) {
+    Git git = GITS.get(token);
+    if (git != null) {
+      return git;
+    }
+
+    JfrEvents.RepositoryOpenEvent event = JfrEvents.beginRepositoryOpen();
+    File gitDir = Paths.get(REPOS_DIR, token).toFile();
+    String uri = URIS.get(token);
+    boolean restored = false;
+    if (!gitDir.exists() && uri != null) {
+      // The repo has been evicted. Restore it.
+      LOG.info("Restoring an evicted repo {}", uri);
+      getToken(uri);
+      restored = true;
+      git = GITS.get(token);
+      if (git != null) {
+        JfrEvents.commit(event, token, true);
+        return git;
+      }
+    }
+
+    return buildGit(token, gitDir, event, restored);
+  }
+
+  /**
+   * Get the {@link Git} instance which corresponds to the repository specified by the given token
+   * without restoring it if it has been evicted.
+   * This must be used instead of {@link #openGit(String)} in tasks run by
+   * {@link #runExclusively(String, ExclusiveTask)}, since restoring a repository locks it again.
+   *
+   * @param token token
+   * @return a {@link Git} instance, or null if the repository doesn't exist.
+   * @throws DaoException if any errors.
+   */
+  private Git openStoredGit(String token) {
+    Git git = GITS.get(token);
+    if (git != null) {
+      return git;
     }
 
     File gitDir = Paths.get(REPOS_DIR, token).toFile();
-    Git git = null;
+    if (!READY_TOKENS.contains(token) || !gitDir.exists()) {
+      return null;
+    }
+    return buildGit(token, gitDir, JfrEvents.beginRepositoryOpen(), false);
+  }
+
+  private Git buildGit(
+    String token, File gitDir, JfrEvents.RepositoryOpenEvent event, boolean restored
+  ) {
     try {
       Repository repo
         = new FileRepositoryBuilder()
@@ -219,9 +920,10 @@ final class RepositoryResolver {
             .readEnvironment()
             .findGitDir()
             .build();
-      git = new Git(repo);
+      Git git = new Git(repo);
       WeakReferenceMonitor.monitor(git, () -> repo.close());
       GITS.put(token, git);
+      JfrEvents.commit(event, token, restored);
       return git;
     } catch (IOException e) {
       LOG.error("Failed to build a repo {}", gitDir, e);
@@ -244,8 +946,17 @@ final class RepositoryResolver {
     return getGit(token).getRepository();
   }
 
+  @FunctionalInterface
+  private static interface ExclusiveTask<T> {
+
+    T run() throws IOException, GitAPIException;
+
+  }
+
   private static final class Token {
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     private final String uri;
     private final boolean isLocal;
     private final String tokenString;
@@ -277,12 +988,13 @@ final class RepositoryResolver {
 
       try {
         MessageDigest md = MessageDigest.getInstance("SHA-1");
-        md.update(rawToken.getBytes());
-        byte[] digest = md.digest();
-        this.tokenString
-          = IntStream.range(0, digest.length)
-              .mapToObj(i -> String.format("%02x", digest[i] & 0xFF))
-              .collect(Collectors.joining());
+        byte[] digest = md.digest(rawToken.getBytes());
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+          hex[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0x0F];
+          hex[i * 2 + 1] = HEX_DIGITS[digest[i] & 0x0F];
+        }
+        this.tokenString = new String(hex);
       } catch (NoSuchAlgorithmException e) {
         throw new AssertionError("Never gets here.");
       }
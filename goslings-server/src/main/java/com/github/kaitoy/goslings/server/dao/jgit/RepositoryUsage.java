@@ -0,0 +1,81 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.dao.jgit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Usage statistics of a repository, which are updated every time the repository is accessed
+ * via {@link RepositoryResolver}.
+ *
+ * @author Kaito Yamada
+ */
+final class RepositoryUsage {
+
+  private final AtomicLong accessCount;
+  private volatile long lastAccessTime;
+  private volatile long diskUsage;
+
+  /**
+   * @param lastAccessTime the time the repository was last accessed in milliseconds since
+   *        the epoch.
+   */
+  RepositoryUsage(long lastAccessTime) {
+    this(lastAccessTime, 0L);
+  }
+
+  /**
+   * @param lastAccessTime the time the repository was last accessed in milliseconds since
+   *        the epoch.
+   * @param accessCount the number of accesses to the repository so far.
+   */
+  RepositoryUsage(long lastAccessTime, long accessCount) {
+    this.lastAccessTime = lastAccessTime;
+    this.accessCount = new AtomicLong(accessCount);
+  }
+
+  /**
+   * Record an access to the repository.
+   */
+  void recordAccess() {
+    accessCount.incrementAndGet();
+    lastAccessTime = System.currentTimeMillis();
+  }
+
+  /**
+   * @return the number of accesses to the repository, including ones recorded before the
+   *         server started if they have been loaded.
+   */
+  long getAccessCount() {
+    return accessCount.get();
+  }
+
+  /**
+   * @return the time the repository was last accessed in milliseconds since the epoch.
+   */
+  long getLastAccessTime() {
+    return lastAccessTime;
+  }
+
+  /**
+   * @return the size in bytes of the repository in the repositories directory, which was
+   *         measured last time.
+   */
+  long getDiskUsage() {
+    return diskUsage;
+  }
+
+  /**
+   * @param diskUsage the size in bytes of the repository in the repositories directory.
+   */
+  void setDiskUsage(long diskUsage) {
+    this.diskUsage = diskUsage;
+  }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.dao.jgit;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PreDestroy;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.github.kaitoy.goslings.server.dao.DaoException;
+
+/**
+ * This class takes over the repositories stored in the repositories directory by the previous
+ * run on startup, and optionally warms up the most used ones in parallel before the server
+ * starts accepting requests: it opens them, loads their refs and pack indexes, and walks their
+ * histories. The warm-up is bounded by a time budget and an estimated memory budget.
+ * This class also saves the usage statistics of the repositories periodically and on shutdown
+ * so that the next run knows which ones are used most.
+ *
+ * @author Kaito Yamada
+ */
+@Component
+@ConditionalOnProperty(
+  name="com.github.kaitoy.goslings.server.backgroundTasks.enabled",
+  matchIfMissing=true
+)
+public final class RepositoryWarmer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RepositoryWarmer.class);
+  private static final RepositoryResolver resolver = RepositoryResolver.getInstance();
+  private static final int DEADLINE_CHECK_MASK = 0x3FF;
+
+  private final AtomicBoolean started = new AtomicBoolean();
+  private final boolean enabled;
+  private final long timeBudget;
+  private final long memoryBudget;
+  private final int parallelism;
+  private final int maxRepositories;
+  private volatile boolean cancelled = false;
+
+  /**
+   * @param enabled whether to warm up repositories on startup.
+   * @param timeBudget the maximum time in milliseconds to spend for the warm-up.
+   * @param memoryBudget the maximum total size in bytes of pack indexes to load in
+   *        the warm-up. 0 means a quarter of the maximum heap size.
+   * @param parallelism the number of repositories warmed up at the same time.
+   * @param maxRepositories the maximum number of repositories to warm up.
+   */
+  public RepositoryWarmer(
+    @Value("${com.github.kaitoy.goslings.server.warmUp.enabled:false}") boolean enabled,
+    @Value("${com.github.kaitoy.goslings.server.warmUp.timeBudget:30000}") long timeBudget,
+    @Value("${com.github.kaitoy.goslings.server.warmUp.memoryBudget:0}") long memoryBudget,
+    @Value("${com.github.kaitoy.goslings.server.warmUp.parallelism:0}") int parallelism,
+    @Value("${com.github.kaitoy.goslings.server.warmUp.maxRepositories:16}") int maxRepositories
+  ) {
+    this.enabled = enabled;
+    this.timeBudget = timeBudget;
+    this.memoryBudget = memoryBudget > 0 ? memoryBudget : Runtime.getRuntime().maxMemory() / 4;
+    this.parallelism
+      = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    this.maxRepositories = maxRepositories;
+  }
+
+  /**
+   * Take over the stored repositories and warm them up if enabled.
+   * This runs before the embedded servlet container starts, so no request has to wait for
+   * repositories being warmed up.
+   *
+   * @param event event
+   */
+  @EventListener
+  void onContextRefreshed(ContextRefreshedEvent event) {
+    if (!started.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      resolver.loadUsages();
+    } catch (IOException e) {
+      LOG.warn("Failed to load usages of repositories.", e);
+    }
+    List<String> tokens = resolver.registerStoredTokens();
+    LOG.info("Registered {} stored repositories.", tokens.size());
+    if (!enabled || tokens.isEmpty()) {
+      return;
+    }
+
+    tokens.sort(
+      Comparator.comparingLong((String token) -> resolver.getUsage(token).getAccessCount())
+        .thenComparingLong(token -> resolver.getUsage(token).getLastAccessTime())
+        .reversed()
+    );
+
+    long start = System.currentTimeMillis();
+    long deadline = start + timeBudget;
+    long remainingMemory = memoryBudget;
+    int numSubmitted = 0;
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+      Thread t = new Thread(r, "goslings-warmer");
+      t.setDaemon(true);
+      return t;
+    });
+    try {
+      for (String token: tokens) {
+        if (numSubmitted >= maxRepositories) {
+          break;
+        }
+        long estimatedMemory = estimateMemory(token);
+        if (estimatedMemory > remainingMemory) {
+          LOG.debug("Skip warming up {} which needs about {} bytes.", token, estimatedMemory);
+          continue;
+        }
+        remainingMemory -= estimatedMemory;
+        numSubmitted++;
+        executor.execute(() -> warmUp(token, deadline));
+      }
+
+      executor.shutdown();
+      if (!executor.awaitTermination(timeBudget, TimeUnit.MILLISECONDS)) {
+        LOG.info("The warm-up exceeded the time budget {} ms.", timeBudget);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      cancelled = true;
+      executor.shutdownNow();
+    }
+    LOG.info(
+      "Warmed up {} repositories in {} ms.", numSubmitted, System.currentTimeMillis() - start
+    );
+  }
+
+  private long estimateMemory(String token) {
+    long size = 0L;
+    for (Path indexFile: resolver.getPackIndexFiles(token)) {
+      try {
+        size += Files.size(indexFile);
+      } catch (IOException e) {
+        LOG.debug("Failed to get the size of {}", indexFile, e);
+      }
+    }
+    return size;
+  }
+
+  private void warmUp(String token, long deadline) {
+    try (RepositoryLeases.Lease lease = resolver.lease(token)) {
+      Repository repo = resolver.openGit(token).getRepository();
+      try (ObjectReader reader = repo.newObjectReader(); RevWalk walk = new RevWalk(reader)) {
+        reader.getBitmapIndex();
+        for (Ref ref: repo.getRefDatabase().getRefs()) {
+          ObjectId id = ref.getObjectId();
+          if (id == null) {
+            continue;
+          }
+          RevObject obj = walk.peel(walk.parseAny(id));
+          if (obj instanceof RevCommit) {
+            walk.markStart((RevCommit) obj);
+          }
+        }
+
+        int count = 0;
+        while (walk.next() != null) {
+          if ((++count & DEADLINE_CHECK_MASK) == 0
+                && (cancelled || System.currentTimeMillis() > deadline)) {
+            LOG.debug("Stopped warming up {} after {} commits.", token, count);
+            return;
+          }
+        }
+        LOG.debug("Warmed up {} with {} commits.", token, count);
+      }
+    } catch (IOException | DaoException e) {
+      LOG.warn("Failed to warm up the repository {}.", token, e);
+    }
+  }
+
+  /**
+   * Save the usage statistics of repositories.
+   */
+  @Scheduled(
+    fixedDelayString = "${com.github.kaitoy.goslings.server.usages.saveInterval:300000}"
+  )
+  @PreDestroy
+  void saveUsages() {
+    try {
+      resolver.saveUsages();
+    } catch (IOException e) {
+      LOG.warn("Failed to save usages of repositories.", e);
+    }
+  }
+
+}
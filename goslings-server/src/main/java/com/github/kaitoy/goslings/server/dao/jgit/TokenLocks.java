@@ -0,0 +1,104 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.dao.jgit;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Mutexes for tokens. A mutex for a token exists only while any thread holds or waits for it,
+ * so the number of mutexes is bounded by the number of threads working on repositories.
+ *
+ * @author Kaito Yamada
+ */
+final class TokenLocks {
+
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+  /**
+   * Acquire the mutex for the given token, waiting until it becomes available.
+   *
+   * @param token token
+   * @return a lease which releases the mutex when closed. Never null.
+   */
+  Lease lock(String token) {
+    Entry entry = retain(token);
+    entry.lock.lock();
+    return new Lease(token, entry);
+  }
+
+  /**
+   * Acquire the mutex for the given token only if it's not held by another thread.
+   *
+   * @param token token
+   * @return a lease which releases the mutex when closed, or null if the mutex is held by
+   *         another thread.
+   */
+  Lease tryLock(String token) {
+    Entry entry = retain(token);
+    if (entry.lock.tryLock()) {
+      return new Lease(token, entry);
+    }
+    release(token);
+    return null;
+  }
+
+  /**
+   * @return the number of mutexes held or waited for.
+   */
+  int size() {
+    return entries.size();
+  }
+
+  private Entry retain(String token) {
+    return entries.compute(token, (k, entry) -> {
+      Entry e = entry != null ? entry : new Entry();
+      e.users++;
+      return e;
+    });
+  }
+
+  private void release(String token) {
+    entries.computeIfPresent(token, (k, entry) -> --entry.users == 0 ? null : entry);
+  }
+
+  private static final class Entry {
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // guarded by the bin lock of entries
+    private int users = 0;
+
+  }
+
+  /**
+   * A holder of a mutex for a token.
+   *
+   * @author Kaito Yamada
+   */
+  final class Lease implements AutoCloseable {
+
+    private final String token;
+    private final Entry entry;
+
+    private Lease(String token, Entry entry) {
+      this.token = token;
+      this.entry = entry;
+    }
+
+    @Override
+    public void close() {
+      entry.lock.unlock();
+      release(token);
+    }
+
+  }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.dao.jgit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.eclipse.jgit.storage.file.WindowCacheStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+/**
+ * This class configures JGit's process-wide cache of pack files (i.e. WindowCache) on startup,
+ * and publishes its configuration and statistics as metrics of the actuator.
+ *
+ * @author Kaito Yamada
+ */
+@Component
+public final class WindowCacheManager implements PublicMetrics {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WindowCacheManager.class);
+  private static final String METRIC_PREFIX = "jgit.windowCache.";
+
+  private final WindowCacheConfig config = new WindowCacheConfig();
+
+  /**
+   * @param packedGitLimit the maximum number of bytes of pack files to cache in memory.
+   * @param packedGitWindowSize the size in bytes of each window read from pack files.
+   * @param packedGitOpenFiles the maximum number of pack files to keep open.
+   * @param packedGitMMAP whether to use memory mapping to read pack files.
+   * @param deltaBaseCacheLimit the maximum number of bytes of delta bases to cache.
+   * @param streamFileThreshold the size in bytes of objects above which are streamed.
+   */
+  public WindowCacheManager(
+    @Value("${com.github.kaitoy.goslings.server.windowCache.packedGitLimit:10485760}")
+    long packedGitLimit,
+    @Value("${com.github.kaitoy.goslings.server.windowCache.packedGitWindowSize:8192}")
+    int packedGitWindowSize,
+    @Value("${com.github.kaitoy.goslings.server.windowCache.packedGitOpenFiles:128}")
+    int packedGitOpenFiles,
+    @Value("${com.github.kaitoy.goslings.server.windowCache.packedGitMMAP:false}")
+    boolean packedGitMMAP,
+    @Value("${com.github.kaitoy.goslings.server.windowCache.deltaBaseCacheLimit:10485760}")
+    int deltaBaseCacheLimit,
+    @Value("${com.github.kaitoy.goslings.server.windowCache.streamFileThreshold:52428800}")
+    int streamFileThreshold
+  ) {
+    config.setPackedGitLimit(packedGitLimit);
+    config.setPackedGitWindowSize(packedGitWindowSize);
+    config.setPackedGitOpenFiles(packedGitOpenFiles);
+    config.setPackedGitMMAP(packedGitMMAP);
+    config.setDeltaBaseCacheLimit(deltaBaseCacheLimit);
+    config.setStreamFileThreshold(streamFileThreshold);
+  }
+
+  /**
+   * Install the configuration into JGit.
+   * This has to be done before repositories are opened since JGit drops the cached windows
+   * when the configuration is changed.
+   */
+  @PostConstruct
+  void install() {
+    config.install();
+    LOG.info(
+      "Configured WindowCache. packedGitLimit: {}, packedGitWindowSize: {}, "
+        + "packedGitOpenFiles: {}, packedGitMMAP: {}, deltaBaseCacheLimit: {}, "
+        + "streamFileThreshold: {}",
+      config.getPackedGitLimit(),
+      config.getPackedGitWindowSize(),
+      config.getPackedGitOpenFiles(),
+      config.isPackedGitMMAP(),
+      config.getDeltaBaseCacheLimit(),
+      config.getStreamFileThreshold()
+    );
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    WindowCacheStats stats = WindowCacheStats.getStats();
+    List<Metric<?>> metrics = new ArrayList<>();
+    metrics.add(new Metric<>(METRIC_PREFIX + "hitRatio", stats.getHitRatio()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "hitCount", stats.getHitCount()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "missCount", stats.getMissCount()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "evictionCount", stats.getEvictionCount()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "averageLoadTime", stats.getAverageLoadTime()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "openFiles", stats.getOpenFileCount()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "openBytes", stats.getOpenByteCount()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "packedGitLimit", config.getPackedGitLimit()));
+    metrics.add(
+      new Metric<>(METRIC_PREFIX + "packedGitOpenFiles", config.getPackedGitOpenFiles())
+    );
+    metrics.add(
+      new Metric<>(METRIC_PREFIX + "deltaBaseCacheLimit", config.getDeltaBaseCacheLimit())
+    );
+    return metrics;
+  }
+
+}
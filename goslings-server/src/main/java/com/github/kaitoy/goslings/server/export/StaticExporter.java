@@ -0,0 +1,391 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.kaitoy.goslings.server.BeanQualifiers;
+import com.github.kaitoy.goslings.server.dao.DaoException;
+import com.github.kaitoy.goslings.server.dao.ObjectDao;
+import com.github.kaitoy.goslings.server.dao.ReferenceDao;
+import com.github.kaitoy.goslings.server.dao.RepositoryDao;
+import com.github.kaitoy.goslings.server.resource.Branch;
+import com.github.kaitoy.goslings.server.resource.Commit;
+import com.github.kaitoy.goslings.server.resource.ObjectContents;
+import com.github.kaitoy.goslings.server.resource.StringWrapper;
+import com.github.kaitoy.goslings.server.resource.SymbolicReference;
+import com.github.kaitoy.goslings.server.resource.Tag;
+import com.github.kaitoy.goslings.server.resource.Tree;
+
+/**
+ * This writes the responses of REST API v1 for a repository to static files, so that Goslings
+ * GUI can show the repository without the server.
+ * Each response is written to &lt;output directory&gt;/v1/&lt;token&gt;/&lt;API path&gt;.json
+ * along with a gzipped copy &lt;API path&gt;.json.gz. (e.g. v1/&lt;token&gt;/objects/commits.json)
+ * Trees and contents of objects are written only once per object ID, and not written again
+ * if their files already exist, since they never change.
+ * Walks and object reads for different parts of the repository run in parallel.
+ *
+ * @author Kaito Yamada
+ */
+@Component
+public final class StaticExporter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(StaticExporter.class);
+  private static final int BATCH_SIZE = 256;
+  private static final String JSON_SUFFIX = ".json";
+  private static final String GZIP_SUFFIX = ".gz";
+  private static final String TMP_FILE_SUFFIX = ".tmp";
+
+  @Autowired
+  @Qualifier(BeanQualifiers.DAO_JGIT)
+  private RepositoryDao repositoryDao;
+
+  @Autowired
+  @Qualifier(BeanQualifiers.DAO_JGIT)
+  private ObjectDao objectDao;
+
+  @Autowired
+  @Qualifier(BeanQualifiers.DAO_JGIT)
+  private ReferenceDao referenceDao;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Value("${com.github.kaitoy.goslings.server.objectContents.byteBudget:1048576}")
+  private long objectContentsByteBudget;
+
+  private final int threads;
+
+  /**
+   * @param threads the number of threads to export with. 0 means the number of processors.
+   */
+  public StaticExporter(
+    @Value("${com.github.kaitoy.goslings.server.export.threads:0}") int threads
+  ) {
+    this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Export a repository.
+   *
+   * @param uri the path to or the URL of the repository.
+   * @param outDir the directory to write files in. It's created if it doesn't exist.
+   * @return the token of the repository. Never null.
+   * @throws IOException if failed to write files.
+   * @throws DaoException if failed to read the repository.
+   */
+  public String export(String uri, Path outDir) throws IOException {
+    String token = repositoryDao.getToken(uri);
+    long start = System.currentTimeMillis();
+    ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "goslings-exporter");
+      t.setDaemon(true);
+      return t;
+    });
+    try {
+      Export export = new Export(token, outDir.resolve("v1").resolve(token), executor);
+      export.run();
+      LOG.info(
+        "Exported {} to {} in {} ms: {} files written, {} files already existed.",
+        uri,
+        outDir,
+        System.currentTimeMillis() - start,
+        export.written.get(),
+        export.skipped.get()
+      );
+      return token;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @FunctionalInterface
+  private static interface ExportTask {
+
+    void run() throws IOException;
+
+  }
+
+  /**
+   * The state of an export of a repository.
+   */
+  private final class Export {
+
+    private final String token;
+    private final Path baseDir;
+    private final ExecutorService executor;
+    private final Set<String> seenTrees = ConcurrentHashMap.newKeySet();
+    private final Set<String> seenContents = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private final AtomicInteger written = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+
+    private Export(String token, Path baseDir, ExecutorService executor) {
+      this.token = token;
+      this.baseDir = baseDir;
+      this.executor = executor;
+    }
+
+    private void run() throws IOException {
+      // Hold a pending count until all the root tasks are submitted.
+      pending.incrementAndGet();
+      submit(this::exportCommits);
+      submit(this::exportBranches);
+      submit(this::exportTags);
+      submit(this::exportSymbolicReferences);
+      submit(this::exportIndex);
+      release();
+
+      try {
+        done.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw e;
+      }
+    }
+
+    private void submit(ExportTask task) {
+      pending.incrementAndGet();
+      executor.execute(() -> {
+        try {
+          if (!done.isDone()) {
+            task.run();
+          }
+        } catch (IOException | RuntimeException e) {
+          done.completeExceptionally(e);
+        } finally {
+          release();
+        }
+      });
+    }
+
+    private void release() {
+      if (pending.decrementAndGet() == 0) {
+        done.complete(null);
+      }
+    }
+
+    private void exportCommits() throws IOException {
+      Commit[] commits = objectDao.getCommits(token);
+      write("objects/commits", commits, false);
+
+      List<String> commitIds = new ArrayList<>(commits.length);
+      List<String> treeIds = new ArrayList<>(commits.length);
+      for (Commit commit: commits) {
+        commitIds.add(commit.getId());
+        treeIds.add(commit.getTreeId());
+      }
+      exportContents(commitIds);
+      exportTrees(treeIds);
+    }
+
+    private void exportBranches() throws IOException {
+      Branch[] branches = referenceDao.getBranches(token);
+      write("refs/branches", branches, false);
+      for (Branch branch: branches) {
+        submit(() -> exportRefContents(branch.getName(), branch.getName()));
+      }
+    }
+
+    private void exportTags() throws IOException {
+      Tag[] tags = referenceDao.getTags(token);
+      write("refs/tags", tags, false);
+
+      List<String> tagObjectIds = new ArrayList<>();
+      for (Tag tag: tags) {
+        submit(() -> exportRefContents(tag.getName(), tag.getName()));
+        if (tag.getTagObjectId() != null) {
+          tagObjectIds.add(tag.getTagObjectId());
+        }
+      }
+      exportContents(tagObjectIds);
+    }
+
+    private void exportSymbolicReferences() throws IOException {
+      SymbolicReference[] symrefs = referenceDao.getSymbolicReferences(token);
+      write("symrefs", symrefs, false);
+      for (SymbolicReference symref: symrefs) {
+        submit(() -> exportRefContents("symrefs/" + symref.getName(), symref.getName()));
+      }
+    }
+
+    private void exportRefContents(String apiPath, String refFullName) throws IOException {
+      String contents;
+      try {
+        contents = referenceDao.getContents(token, refFullName);
+      } catch (DaoException e) {
+        // e.g. packed refs, which don't have their own files.
+        LOG.debug("Skipped contents of {}.", refFullName, e);
+        return;
+      }
+      write(apiPath + "/contents", new StringWrapper(contents), false);
+    }
+
+    private void exportIndex() throws IOException {
+      try {
+        write("index", repositoryDao.getIndex(token), false);
+        write("index/contents", new StringWrapper(repositoryDao.getIndexContents(token)), false);
+      } catch (DaoException e) {
+        // e.g. bare repositories, which don't have the index.
+        LOG.info("Skipped the index of {}: {}", token, e.getMessage());
+      }
+    }
+
+    private void exportTrees(Collection<String> treeIds) {
+      List<String> newIds = new ArrayList<>();
+      for (String id: treeIds) {
+        if (seenTrees.add(id)) {
+          newIds.add(id);
+        }
+      }
+
+      for (int i = 0; i < newIds.size(); i += BATCH_SIZE) {
+        String[] batch
+          = newIds.subList(i, Math.min(i + BATCH_SIZE, newIds.size())).toArray(new String[0]);
+        submit(() -> {
+          List<String> subtreeIds = new ArrayList<>();
+          List<String> blobIds = new ArrayList<>();
+          for (Tree tree: objectDao.getTrees(token, batch)) {
+            write("objects/trees/" + tree.getId(), new Tree[] {tree}, true);
+            subtreeIds.addAll(tree.getTrees().keySet());
+            blobIds.addAll(tree.getBlobs().keySet());
+          }
+          exportTrees(subtreeIds);
+          exportContents(Arrays.asList(batch));
+          exportContents(blobIds);
+        });
+      }
+    }
+
+    private void exportContents(Collection<String> objectIds) {
+      List<String> newIds = new ArrayList<>();
+      for (String id: objectIds) {
+        if (!seenContents.add(id)) {
+          continue;
+        }
+        if (exists(contentsPath(id))) {
+          skipped.incrementAndGet();
+          continue;
+        }
+        newIds.add(id);
+      }
+
+      for (int i = 0; i < newIds.size(); i += BATCH_SIZE) {
+        String[] batch
+          = newIds.subList(i, Math.min(i + BATCH_SIZE, newIds.size())).toArray(new String[0]);
+        submit(() -> {
+          ObjectContents[] batchContents
+            = objectDao.getContents(token, batch, objectContentsByteBudget);
+          for (ObjectContents contents: batchContents) {
+            String text
+              = contents.isOmitted()
+                  ? objectDao.getContents(token, contents.getId())
+                  : contents.getContents();
+            write(contentsPath(contents.getId()), new StringWrapper(text), false);
+          }
+        });
+      }
+    }
+
+    private String contentsPath(String objectId) {
+      return "objects/" + objectId + "/contents";
+    }
+
+    private boolean exists(String apiPath) {
+      return Files.exists(baseDir.resolve(apiPath + JSON_SUFFIX + GZIP_SUFFIX));
+    }
+
+    /**
+     * @param apiPath the path of the API relative to v1/&lt;token&gt;/.
+     * @param body the response body.
+     * @param immutable whether the response never changes, so that it needn't be written if
+     *        it already exists.
+     * @throws IOException if failed to write.
+     */
+    private void write(String apiPath, Object body, boolean immutable) throws IOException {
+      if (immutable && exists(apiPath)) {
+        skipped.incrementAndGet();
+        return;
+      }
+
+      Path file = baseDir.resolve(apiPath + JSON_SUFFIX);
+      Path gzipFile = baseDir.resolve(apiPath + JSON_SUFFIX + GZIP_SUFFIX);
+      Files.createDirectories(file.getParent());
+      byte[] json = objectMapper.writeValueAsBytes(body);
+      // Both are written to temporary files and moved into place so that a crash never leaves
+      // a truncated file. The gzipped one is moved last so that its existence tells the export
+      // of the path is complete.
+      Path tmpFile = createTmpFile(file);
+      Path tmpGzipFile = null;
+      try {
+        Files.write(tmpFile, json);
+        tmpGzipFile = createTmpFile(gzipFile);
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmpGzipFile))) {
+          out.write(json);
+        }
+        Files.move(
+          tmpFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING
+        );
+        Files.move(
+          tmpGzipFile,
+          gzipFile,
+          StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING
+        );
+      } finally {
+        Files.deleteIfExists(tmpFile);
+        if (tmpGzipFile != null) {
+          Files.deleteIfExists(tmpGzipFile);
+        }
+      }
+      written.incrementAndGet();
+    }
+
+    /*
+     * Named uniquely because a path may be written by more than one task at the same time, and
+     * created in the same directory because a move across file systems can't be atomic.
+     */
+    private Path createTmpFile(Path file) throws IOException {
+      return Files.createTempFile(file.getParent(), "." + file.getFileName(), TMP_FILE_SUFFIX);
+    }
+
+  }
+
+}
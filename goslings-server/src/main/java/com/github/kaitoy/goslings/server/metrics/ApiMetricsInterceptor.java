@@ -0,0 +1,90 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.metrics;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * This times every request handled by REST API controllers.
+ * The timers are named goslings.api.&lt;handler method&gt;.&lt;success|clientError|serverError&gt;,
+ * and are published with their percentiles through the actuator.
+ *
+ * @author Kaito Yamada
+ */
+public final class ApiMetricsInterceptor extends HandlerInterceptorAdapter {
+
+  private static final String START_TIME_ATTR
+    = ApiMetricsInterceptor.class.getName() + ".startTime";
+
+  private final MetricRegistry registry;
+  private final Map<Method, Timer[]> timers = new ConcurrentHashMap<>();
+
+  /**
+   * @param registry the registry to register timers to.
+   */
+  public ApiMetricsInterceptor(MetricRegistry registry) {
+    this.registry = registry;
+  }
+
+  @Override
+  public boolean preHandle(HttpServletRequest req, HttpServletResponse res, Object handler) {
+    if (req.getAttribute(START_TIME_ATTR) == null) {
+      req.setAttribute(START_TIME_ATTR, System.nanoTime());
+    }
+    return true;
+  }
+
+  @Override
+  public void afterCompletion(
+    HttpServletRequest req, HttpServletResponse res, Object handler, Exception ex
+  ) {
+    Object startTime = req.getAttribute(START_TIME_ATTR);
+    if (!(handler instanceof HandlerMethod) || startTime == null) {
+      return;
+    }
+
+    Method method = ((HandlerMethod) handler).getMethod();
+    Timer[] methodTimers = timers.get(method);
+    if (methodTimers == null) {
+      String name = "goslings.api." + method.getName();
+      methodTimers
+        = new Timer[] {
+            registry.timer(name + ".success"),
+            registry.timer(name + ".clientError"),
+            registry.timer(name + ".serverError")
+          };
+      timers.put(method, methodTimers);
+    }
+
+    int index;
+    if (ex != null || res.getStatus() >= 500) {
+      index = 2;
+    }
+    else if (res.getStatus() >= 400) {
+      index = 1;
+    }
+    else {
+      index = 0;
+    }
+    methodTimers[index].update(System.nanoTime() - (Long) startTime, TimeUnit.NANOSECONDS);
+  }
+
+}
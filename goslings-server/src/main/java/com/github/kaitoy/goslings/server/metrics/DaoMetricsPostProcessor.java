@@ -0,0 +1,103 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.metrics;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.github.kaitoy.goslings.server.dao.ObjectDao;
+import com.github.kaitoy.goslings.server.dao.ReferenceDao;
+import com.github.kaitoy.goslings.server.dao.RepositoryDao;
+
+/**
+ * This wraps DAO beans with proxies which time every DAO method call.
+ * The timers are named goslings.dao.&lt;DAO interface&gt;.&lt;method&gt;.&lt;success|failure&gt;,
+ * and are published with their percentiles through the actuator.
+ *
+ * @author Kaito Yamada
+ */
+@Component
+public final class DaoMetricsPostProcessor implements BeanPostProcessor {
+
+  private static final Class<?>[] DAO_INTERFACES
+    = new Class<?>[] { ObjectDao.class, ReferenceDao.class, RepositoryDao.class };
+
+  private final ObjectFactory<MetricRegistry> registryFactory;
+
+  /**
+   * @param registryFactory a factory of the registry to register timers to. This is resolved
+   *        lazily since bean post processors are instantiated before ordinary beans.
+   */
+  public DaoMetricsPostProcessor(ObjectFactory<MetricRegistry> registryFactory) {
+    this.registryFactory = registryFactory;
+  }
+
+  @Override
+  public Object postProcessBeforeInitialization(Object bean, String beanName) {
+    return bean;
+  }
+
+  @Override
+  public Object postProcessAfterInitialization(Object bean, String beanName) {
+    for (Class<?> daoInterface: DAO_INTERFACES) {
+      if (daoInterface.isInstance(bean)) {
+        ProxyFactory factory = new ProxyFactory(bean);
+        factory.addAdvice(new TimingInterceptor(daoInterface.getSimpleName()));
+        return factory.getProxy();
+      }
+    }
+    return bean;
+  }
+
+  private final class TimingInterceptor implements MethodInterceptor {
+
+    private final String prefix;
+    private final Map<Method, Timer[]> timers = new ConcurrentHashMap<>();
+
+    private TimingInterceptor(String daoName) {
+      this.prefix = "goslings.dao." + daoName + ".";
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+      Timer[] methodTimers = timers.get(invocation.getMethod());
+      if (methodTimers == null) {
+        MetricRegistry registry = registryFactory.getObject();
+        String name = prefix + invocation.getMethod().getName();
+        methodTimers
+          = new Timer[] { registry.timer(name + ".success"), registry.timer(name + ".failure") };
+        timers.put(invocation.getMethod(), methodTimers);
+      }
+
+      long start = System.nanoTime();
+      boolean succeeded = false;
+      try {
+        Object result = invocation.proceed();
+        succeeded = true;
+        return result;
+      } finally {
+        methodTimers[succeeded ? 0 : 1].update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        RequestTimings.record(RequestTimings.DAO, start);
+      }
+    }
+
+  }
+
+}
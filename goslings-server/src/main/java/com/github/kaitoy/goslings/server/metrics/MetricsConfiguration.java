@@ -0,0 +1,79 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.metrics;
+
+import javax.servlet.DispatcherType;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.kaitoy.goslings.server.controller.StreamingApiV1Controller;
+
+/**
+ * Configuration of metrics of the REST API.
+ *
+ * @author Kaito Yamada
+ */
+@Configuration
+public class MetricsConfiguration extends WebMvcConfigurerAdapter {
+
+  @Autowired
+  private MetricRegistry registry;
+
+  @Override
+  public void addInterceptors(InterceptorRegistry interceptors) {
+    interceptors.addInterceptor(new ApiMetricsInterceptor(registry)).addPathPatterns("/v1/**");
+  }
+
+  /**
+   * @param enabled whether to emit Server-Timing headers.
+   * @param slowRequestThreshold the time in milliseconds above which requests are logged.
+   * @return the registration of {@link ServerTimingFilter}.
+   */
+  @Bean
+  public FilterRegistrationBean serverTimingFilter(
+    @Value("${com.github.kaitoy.goslings.server.serverTiming.enabled:true}")
+    boolean enabled,
+    @Value("${com.github.kaitoy.goslings.server.serverTiming.slowRequestThreshold:1000}")
+    long slowRequestThreshold
+  ) {
+    FilterRegistrationBean registration
+      = new FilterRegistrationBean(
+          new ServerTimingFilter(
+            slowRequestThreshold,
+            StreamingApiV1Controller.PATH + "/"
+          )
+        );
+    registration.addUrlPatterns("/v1/*");
+    registration.setDispatcherTypes(DispatcherType.REQUEST, DispatcherType.ASYNC);
+    registration.setEnabled(enabled);
+    return registration;
+  }
+
+  /**
+   * This replaces the default JSON converter of Spring Boot.
+   *
+   * @param objectMapper the object mapper configured by Spring Boot.
+   * @return a JSON converter which records time to serialize response bodies.
+   */
+  @Bean
+  public TimingJackson2HttpMessageConverter timingJackson2HttpMessageConverter(
+    ObjectMapper objectMapper
+  ) {
+    return new TimingJackson2HttpMessageConverter(objectMapper);
+  }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Time spent in each phase (e.g. opening a repository, walking history, inflating objects, and
+ * serializing a response) of processing a request.
+ * An instance is bound to the thread processing a request by {@link ServerTimingFilter}, and
+ * code in any layer records phases into it by {@link #start()} and {@link #record(String, long)}.
+ * Recording on a thread without a bound instance (e.g. a background task) is a no-op.
+ *
+ * @author Kaito Yamada
+ */
+public final class RequestTimings {
+
+  /**
+   * The phase of opening a repository.
+   */
+  public static final String REPO = "repo";
+
+  /**
+   * The phase of walking commits or refs.
+   */
+  public static final String WALK = "walk";
+
+  /**
+   * The phase of reading and inflating objects.
+   */
+  public static final String INFLATE = "inflate";
+
+  /**
+   * The phase of parsing objects or the index.
+   */
+  public static final String PARSE = "parse";
+
+  /**
+   * The phase of DAO calls as a whole.
+   */
+  public static final String DAO = "dao";
+
+  /**
+   * The phase of serializing a response body.
+   */
+  public static final String SERIALIZE = "serialize";
+
+  private static final ThreadLocal<RequestTimings> CURRENT = new ThreadLocal<>();
+
+  // phase name -> {total nanos, count}
+  private final Map<String, long[]> phases = new LinkedHashMap<>();
+
+  /**
+   * @return the instance bound to the current thread, or null if none.
+   */
+  public static RequestTimings current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Bind the given instance to the current thread.
+   *
+   * @param timings timings. If null, the current binding is removed.
+   */
+  public static void bind(RequestTimings timings) {
+    if (timings == null) {
+      CURRENT.remove();
+    }
+    else {
+      CURRENT.set(timings);
+    }
+  }
+
+  /**
+   * @return the start time of a phase, which is to be passed to {@link #record(String, long)}.
+   */
+  public static long start() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Record a phase which started at the given time and ends now into the instance bound to the
+   * current thread, if any.
+   *
+   * @param phase the name of the phase.
+   * @param startNanos the value {@link #start()} returned when the phase started.
+   */
+  public static void record(String phase, long startNanos) {
+    RequestTimings timings = CURRENT.get();
+    if (timings != null) {
+      timings.add(phase, System.nanoTime() - startNanos);
+    }
+  }
+
+  /**
+   * @param phase the name of the phase.
+   * @param nanos time spent in the phase.
+   */
+  public synchronized void add(String phase, long nanos) {
+    long[] phaseTimings = phases.get(phase);
+    if (phaseTimings == null) {
+      phaseTimings = new long[2];
+      phases.put(phase, phaseTimings);
+    }
+    phaseTimings[0] += nanos;
+    phaseTimings[1]++;
+  }
+
+  /**
+   * @return the total time in nanoseconds spent in each phase in the order of the first
+   *         recording. Never null.
+   */
+  public synchronized Map<String, Long> getPhases() {
+    Map<String, Long> result = new LinkedHashMap<>();
+    phases.forEach((phase, phaseTimings) -> result.put(phase, phaseTimings[0]));
+    return result;
+  }
+
+  /**
+   * Build a value of the Server-Timing header, e.g. repo;dur=0.512, walk;dur=12.3;desc="x3".
+   * The count is given as desc only for phases recorded more than once.
+   *
+   * @param totalNanos the total time in nanoseconds to process the request.
+   * @return a value of the Server-Timing header. Never null.
+   */
+  public synchronized String toServerTiming(long totalNanos) {
+    StringBuilder sb = new StringBuilder();
+    phases.forEach((phase, phaseTimings) -> {
+      appendMetric(sb, phase, phaseTimings[0]);
+      if (phaseTimings[1] > 1) {
+        sb.append(";desc=\"x").append(phaseTimings[1]).append('"');
+      }
+      sb.append(", ");
+    });
+    appendMetric(sb, "total", totalNanos);
+    return sb.toString();
+  }
+
+  private static void appendMetric(StringBuilder sb, String name, long nanos) {
+    sb.append(name)
+      .append(";dur=")
+      .append(String.format(Locale.ROOT, "%.3f", nanos / 1e6));
+  }
+
+}
@@ -0,0 +1,241 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.metrics;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.WebUtils;
+
+/**
+ * This measures phases of processing each request by {@link RequestTimings} and emits them as
+ * a Server-Timing header.
+ * The response body is never buffered: the header is set just before the body starts to be
+ * written, so it covers the phases up to then, and its total is the time to the first byte.
+ * The serialization of the body is recorded after that, and appears only in the log of slow
+ * requests, which are ones taking longer than a threshold, with their token, endpoint,
+ * response size, and all the phases.
+ * For a request processed asynchronously, the measurement spans from the first dispatch to
+ * the end of the async dispatch which writes the response.
+ * Requests to the given excluded paths, e.g. ones with streaming responses, aren't measured.
+ *
+ * @author Kaito Yamada
+ */
+public final class ServerTimingFilter extends OncePerRequestFilter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ServerTimingFilter.class);
+  private static final String HEADER_NAME = "Server-Timing";
+  private static final String START_TIME_ATTR
+    = ServerTimingFilter.class.getName() + ".startTime";
+  private static final String TIMINGS_ATTR = ServerTimingFilter.class.getName() + ".timings";
+
+  private final long slowRequestThresholdNanos;
+  private final String[] excludedPathPrefixes;
+
+  /**
+   * @param slowRequestThreshold the time in milliseconds above which requests are logged.
+   *        0 means never.
+   * @param excludedPathPrefixes prefixes of paths within the application of requests which
+   *        this doesn't measure.
+   */
+  public ServerTimingFilter(long slowRequestThreshold, String... excludedPathPrefixes) {
+    this.slowRequestThresholdNanos = slowRequestThreshold * 1000000L;
+    this.excludedPathPrefixes = excludedPathPrefixes.clone();
+  }
+
+  @Override
+  protected boolean shouldNotFilter(HttpServletRequest req) {
+    String path = req.getRequestURI().substring(req.getContextPath().length());
+    for (String prefix: excludedPathPrefixes) {
+      if (path.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  protected boolean shouldNotFilterAsyncDispatch() {
+    return false;
+  }
+
+  @Override
+  protected void doFilterInternal(
+    HttpServletRequest req, HttpServletResponse res, FilterChain chain
+  ) throws ServletException, IOException {
+    RequestTimings timings;
+    TimingResponseWrapper wrapper;
+    if (isAsyncDispatch(req)) {
+      timings = (RequestTimings) req.getAttribute(TIMINGS_ATTR);
+      if (timings == null) {
+        chain.doFilter(req, res);
+        return;
+      }
+      wrapper = WebUtils.getNativeResponse(res, TimingResponseWrapper.class);
+      if (wrapper == null) {
+        wrapper = new TimingResponseWrapper(res, req, timings);
+      }
+    }
+    else {
+      req.setAttribute(START_TIME_ATTR, System.nanoTime());
+      timings = new RequestTimings();
+      req.setAttribute(TIMINGS_ATTR, timings);
+      wrapper = new TimingResponseWrapper(res, req, timings);
+    }
+
+    RequestTimings.bind(timings);
+    try {
+      chain.doFilter(req, wrapper);
+    } finally {
+      RequestTimings.bind(null);
+      if (!isAsyncStarted(req)) {
+        // For responses without a body, e.g. 304.
+        wrapper.setServerTimingHeader();
+        long total = System.nanoTime() - (Long) req.getAttribute(START_TIME_ATTR);
+        if (slowRequestThresholdNanos > 0 && total >= slowRequestThresholdNanos) {
+          logSlowRequest(req, wrapper, timings, total);
+        }
+      }
+    }
+  }
+
+  private void logSlowRequest(
+    HttpServletRequest req,
+    TimingResponseWrapper res,
+    RequestTimings timings,
+    long totalNanos
+  ) {
+    Object uriVars = req.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+    Object token = uriVars instanceof Map ? ((Map<?, ?>) uriVars).get("token") : null;
+    Object pattern = req.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+    StringBuilder phases = new StringBuilder();
+    timings.getPhases().forEach(
+      (phase, nanos) -> phases.append(phase).append('=').append(nanos / 1000000L).append("ms ")
+    );
+    LOG.warn(
+      "Slow request. token: {}, endpoint: {} {}, status: {}, size: {} bytes, "
+        + "total: {} ms, phases: {}",
+      token,
+      req.getMethod(),
+      pattern != null ? pattern : req.getRequestURI(),
+      res.getStatus(),
+      res.contentSize,
+      totalNanos / 1000000L,
+      phases.toString().trim()
+    );
+  }
+
+  /**
+   * A response which sets the Server-Timing header when the body starts to be written, and
+   * counts bytes of the body written through it.
+   */
+  private static final class TimingResponseWrapper extends HttpServletResponseWrapper {
+
+    private final HttpServletRequest req;
+    private final RequestTimings timings;
+    private boolean headerSet = false;
+    private CountingOutputStream out;
+    private volatile long contentSize = 0L;
+
+    private TimingResponseWrapper(
+      HttpServletResponse res, HttpServletRequest req, RequestTimings timings
+    ) {
+      super(res);
+      this.req = req;
+      this.timings = timings;
+    }
+
+    private void setServerTimingHeader() {
+      if (headerSet || isCommitted()) {
+        return;
+      }
+      headerSet = true;
+      long total = System.nanoTime() - (Long) req.getAttribute(START_TIME_ATTR);
+      setHeader(HEADER_NAME, timings.toServerTiming(total));
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+      setServerTimingHeader();
+      if (out == null) {
+        out = new CountingOutputStream(super.getOutputStream());
+      }
+      return out;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+      setServerTimingHeader();
+      return super.getWriter();
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+      setServerTimingHeader();
+      super.flushBuffer();
+    }
+
+    private final class CountingOutputStream extends ServletOutputStream {
+
+      private final ServletOutputStream delegate;
+
+      private CountingOutputStream(ServletOutputStream delegate) {
+        this.delegate = delegate;
+      }
+
+      @Override
+      public void write(int b) throws IOException {
+        delegate.write(b);
+        contentSize++;
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        delegate.write(b, off, len);
+        contentSize += len;
+      }
+
+      @Override
+      public void flush() throws IOException {
+        delegate.flush();
+      }
+
+      @Override
+      public void close() throws IOException {
+        delegate.close();
+      }
+
+      @Override
+      public boolean isReady() {
+        return delegate.isReady();
+      }
+
+      @Override
+      public void setWriteListener(WriteListener writeListener) {
+        delegate.setWriteListener(writeListener);
+      }
+
+    }
+
+  }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.metrics;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A {@link MappingJackson2HttpMessageConverter} which records serialization of response bodies
+ * as the {@link RequestTimings#SERIALIZE} phase.
+ *
+ * @author Kaito Yamada
+ */
+public final class TimingJackson2HttpMessageConverter extends MappingJackson2HttpMessageConverter {
+
+  /**
+   * @param objectMapper the object mapper to serialize with.
+   */
+  public TimingJackson2HttpMessageConverter(ObjectMapper objectMapper) {
+    super(objectMapper);
+  }
+
+  @Override
+  protected void writeInternal(
+    Object object, Type type, HttpOutputMessage outputMessage
+  ) throws IOException, HttpMessageNotWritableException {
+    long start = RequestTimings.start();
+    try {
+      super.writeInternal(object, type, outputMessage);
+    } finally {
+      RequestTimings.record(RequestTimings.SERIALIZE, start);
+    }
+  }
+
+}
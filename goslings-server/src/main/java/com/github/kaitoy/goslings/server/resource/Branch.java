@@ -8,6 +8,8 @@
 
 package com.github.kaitoy.goslings.server.resource;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 /**
  * Branch
  *
@@ -15,6 +17,12 @@ package com.github.kaitoy.goslings.server.resource;
  */
 public final class Branch {
 
+  /**
+   * All the fields of this resource.
+   */
+  public static final FieldSet FIELDS = FieldSet.of("name", "referentId");
+
+  private final FieldSet fields;
   private final String name;
   private final String referentId;
 
@@ -23,25 +31,46 @@ public final class Branch {
    * @param referentId referentId
    */
   public Branch(String name, String referentId) {
-    if (name == null) {
+    this(FIELDS, name, referentId);
+  }
+
+  /**
+   * @param fields the fields which have values. The others must be null.
+   * @param name name
+   * @param referentId referentId
+   */
+  public Branch(FieldSet fields, String name, String referentId) {
+    if (fields == null) {
+      throw new NullPointerException("fields is null.");
+    }
+    if (fields.contains("name") && name == null) {
       throw new NullPointerException("name is null.");
     }
-    if (referentId == null) {
+    if (fields.contains("referentId") && referentId == null) {
       throw new NullPointerException("referentId is null.");
     }
+    this.fields = fields;
     this.name = name;
     this.referentId = referentId;
   }
 
   /**
-   * @return name. Never null.
+   * @return the fields which have values. Never null.
+   */
+  @JsonIgnore
+  public FieldSet getFields() {
+    return fields;
+  }
+
+  /**
+   * @return name. Null if not in the fields.
    */
   public String getName() {
     return name;
   }
 
   /**
-   * @return referentId. Never null.
+   * @return referentId. Null if not in the fields.
    */
   public String getReferentId() {
     return referentId;
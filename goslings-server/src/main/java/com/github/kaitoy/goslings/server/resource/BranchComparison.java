@@ -0,0 +1,95 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.resource;
+
+/**
+ * Comparison of a branch with a base branch.
+ *
+ * @author Kaito Yamada
+ */
+public final class BranchComparison {
+
+  private final String name;
+  private final String referentId;
+  private final String baseName;
+  private final String mergeBaseId;
+  private final int ahead;
+  private final int behind;
+
+  /**
+   * @param name name
+   * @param referentId referentId
+   * @param baseName baseName
+   * @param mergeBaseId mergeBaseId
+   * @param ahead ahead
+   * @param behind behind
+   */
+  public BranchComparison(
+    String name, String referentId, String baseName, String mergeBaseId, int ahead, int behind
+  ) {
+    if (name == null) {
+      throw new NullPointerException("name is null.");
+    }
+    if (referentId == null) {
+      throw new NullPointerException("referentId is null.");
+    }
+    if (baseName == null) {
+      throw new NullPointerException("baseName is null.");
+    }
+    this.name = name;
+    this.referentId = referentId;
+    this.baseName = baseName;
+    this.mergeBaseId = mergeBaseId;
+    this.ahead = ahead;
+    this.behind = behind;
+  }
+
+  /**
+   * @return name. Never null.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return referentId. Never null.
+   */
+  public String getReferentId() {
+    return referentId;
+  }
+
+  /**
+   * @return the full name of the base branch. Never null.
+   */
+  public String getBaseName() {
+    return baseName;
+  }
+
+  /**
+   * @return the ID of the best common ancestor of the branch and the base. Maybe null.
+   */
+  public String getMergeBaseId() {
+    return mergeBaseId;
+  }
+
+  /**
+   * @return the number of commits reachable from the branch but not from the base.
+   */
+  public int getAhead() {
+    return ahead;
+  }
+
+  /**
+   * @return the number of commits reachable from the base but not from the branch.
+   */
+  public int getBehind() {
+    return behind;
+  }
+
+}
@@ -8,6 +8,8 @@
 
 package com.github.kaitoy.goslings.server.resource;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 /**
  * Commit object.
  *
@@ -15,6 +17,12 @@ package com.github.kaitoy.goslings.server.resource;
  */
 public final class Commit {
 
+  /**
+   * All the fields of this resource.
+   */
+  public static final FieldSet FIELDS = FieldSet.of("id", "parentIds", "treeId");
+
+  private final FieldSet fields;
   private final String id;
   private final String[] parentIds;
   private final String treeId;
@@ -27,36 +35,60 @@ public final class Commit {
   public Commit(
     String id, String[] parentIds, String treeId
   ) {
-    if (id == null) {
+    this(FIELDS, id, parentIds, treeId);
+  }
+
+  /**
+   * @param fields the fields which have values. The others must be null.
+   * @param id id
+   * @param parentIds parentIds
+   * @param treeId treeId
+   */
+  public Commit(
+    FieldSet fields, String id, String[] parentIds, String treeId
+  ) {
+    if (fields == null) {
+      throw new NullPointerException("fields is null.");
+    }
+    if (fields.contains("id") && id == null) {
       throw new NullPointerException("id is null.");
     }
-    if (parentIds == null) {
+    if (fields.contains("parentIds") && parentIds == null) {
       throw new NullPointerException("parentIds is null.");
     }
-    if (treeId == null) {
+    if (fields.contains("treeId") && treeId == null) {
       throw new NullPointerException("treeId is null.");
     }
+    this.fields = fields;
     this.id = id;
     this.parentIds = parentIds;
     this.treeId = treeId;
   }
 
   /**
-   * @return id
+   * @return the fields which have values. Never null.
+   */
+  @JsonIgnore
+  public FieldSet getFields() {
+    return fields;
+  }
+
+  /**
+   * @return id. Null if not in the fields.
    */
   public String getId() {
     return id;
   }
 
   /**
-   * @return parentIds. Never null.
+   * @return parentIds. Null if not in the fields.
    */
   public String[] getParentIds() {
     return parentIds;
   }
 
   /**
-   * @return treeId. Never null.
+   * @return treeId. Null if not in the fields.
    */
   public String getTreeId() {
     return treeId;
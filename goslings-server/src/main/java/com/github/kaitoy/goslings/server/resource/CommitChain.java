@@ -0,0 +1,75 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.resource;
+
+/**
+ * A summary of a maximal chain of commits which have a single parent and a single child each,
+ * in place of which it appears in a {@link CommitGraph}.
+ * Children of the chain refer to it by the ID of its head, i.e. the newest commit.
+ *
+ * @author Kaito Yamada
+ */
+public final class CommitChain {
+
+  private final String headId;
+  private final String tailId;
+  private final int length;
+  private final String[] parentIds;
+
+  /**
+   * @param headId the ID of the newest commit in the chain.
+   * @param tailId the ID of the oldest commit in the chain.
+   * @param length the number of commits in the chain.
+   * @param parentIds the IDs of the parents of the tail.
+   */
+  public CommitChain(String headId, String tailId, int length, String[] parentIds) {
+    if (headId == null) {
+      throw new NullPointerException("headId is null.");
+    }
+    if (tailId == null) {
+      throw new NullPointerException("tailId is null.");
+    }
+    if (parentIds == null) {
+      throw new NullPointerException("parentIds is null.");
+    }
+    this.headId = headId;
+    this.tailId = tailId;
+    this.length = length;
+    this.parentIds = parentIds;
+  }
+
+  /**
+   * @return the ID of the newest commit in the chain. Never null.
+   */
+  public String getHeadId() {
+    return headId;
+  }
+
+  /**
+   * @return the ID of the oldest commit in the chain. Never null.
+   */
+  public String getTailId() {
+    return tailId;
+  }
+
+  /**
+   * @return the number of commits in the chain.
+   */
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * @return the IDs of the parents of the tail. Never null.
+   */
+  public String[] getParentIds() {
+    return parentIds;
+  }
+
+}
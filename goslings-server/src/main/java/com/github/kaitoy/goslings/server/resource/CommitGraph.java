@@ -0,0 +1,51 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.resource;
+
+/**
+ * A commit graph in which long linear runs of commits are collapsed into
+ * {@link CommitChain}s.
+ *
+ * @author Kaito Yamada
+ */
+public final class CommitGraph {
+
+  private final Commit[] commits;
+  private final CommitChain[] chains;
+
+  /**
+   * @param commits the commits which are not in any chain.
+   * @param chains the chains.
+   */
+  public CommitGraph(Commit[] commits, CommitChain[] chains) {
+    if (commits == null) {
+      throw new NullPointerException("commits is null.");
+    }
+    if (chains == null) {
+      throw new NullPointerException("chains is null.");
+    }
+    this.commits = commits;
+    this.chains = chains;
+  }
+
+  /**
+   * @return the commits which are not in any chain. Never null.
+   */
+  public Commit[] getCommits() {
+    return commits;
+  }
+
+  /**
+   * @return the chains. Never null.
+   */
+  public CommitChain[] getChains() {
+    return chains;
+  }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.resource;
+
+/**
+ * Metadata of a commit object, i.e. its author, committer, and message.
+ *
+ * @author Kaito Yamada
+ */
+public final class CommitMetadata {
+
+  private final String id;
+  private final Person author;
+  private final Person committer;
+  private final String message;
+  private final boolean messageTruncated;
+
+  /**
+   * @param id id
+   * @param author author
+   * @param committer committer
+   * @param message message, which may be truncated.
+   * @param messageTruncated whether the message is truncated.
+   */
+  public CommitMetadata(
+    String id, Person author, Person committer, String message, boolean messageTruncated
+  ) {
+    if (id == null) {
+      throw new NullPointerException("id is null.");
+    }
+    if (author == null) {
+      throw new NullPointerException("author is null.");
+    }
+    if (committer == null) {
+      throw new NullPointerException("committer is null.");
+    }
+    if (message == null) {
+      throw new NullPointerException("message is null.");
+    }
+    this.id = id;
+    this.author = author;
+    this.committer = committer;
+    this.message = message;
+    this.messageTruncated = messageTruncated;
+  }
+
+  /**
+   * @return id. Never null.
+   */
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * @return author. Never null.
+   */
+  public Person getAuthor() {
+    return author;
+  }
+
+  /**
+   * @return committer. Never null.
+   */
+  public Person getCommitter() {
+    return committer;
+  }
+
+  /**
+   * @return message, which may be truncated. Never null.
+   */
+  public String getMessage() {
+    return message;
+  }
+
+  /**
+   * @return whether the message is truncated.
+   */
+  public boolean isMessageTruncated() {
+    return messageTruncated;
+  }
+
+  /**
+   * Author or committer
+   * @author Kaito Yamada
+   */
+  public static final class Person {
+
+    private final String name;
+    private final String email;
+    private final long time;
+    private final int timeZoneOffset;
+
+    /**
+     * @param name name
+     * @param email email address
+     * @param time time in milliseconds since the epoch
+     * @param timeZoneOffset time zone offset in minutes from UTC
+     */
+    public Person(String name, String email, long time, int timeZoneOffset) {
+      this.name = name;
+      this.email = email;
+      this.time = time;
+      this.timeZoneOffset = timeZoneOffset;
+    }
+
+    /**
+     * @return name
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return email address
+     */
+    public String getEmail() {
+      return email;
+    }
+
+    /**
+     * @return time in milliseconds since the epoch
+     */
+    public long getTime() {
+      return time;
+    }
+
+    /**
+     * @return time zone offset in minutes from UTC
+     */
+    public int getTimeZoneOffset() {
+      return timeZoneOffset;
+    }
+
+  }
+
+}
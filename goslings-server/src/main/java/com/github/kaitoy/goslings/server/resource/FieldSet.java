@@ -0,0 +1,108 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.resource;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * An immutable set of names of fields of a resource, which tells which fields are requested
+ * by a client. DAOs don't load the values of fields which are not in the set, and such fields
+ * are omitted from responses.
+ *
+ * @author Kaito Yamada
+ */
+public final class FieldSet {
+
+  private final Set<String> names;
+
+  private FieldSet(Set<String> names) {
+    this.names = Collections.unmodifiableSet(names);
+  }
+
+  /**
+   * @param names names of fields.
+   * @return a new FieldSet instance.
+   */
+  public static FieldSet of(String... names) {
+    return new FieldSet(new LinkedHashSet<>(Arrays.asList(names)));
+  }
+
+  /**
+   * Parse a comma separated list of field names. (e.g. id,parentIds)
+   *
+   * @param fields a comma separated list of field names. If null or empty, all the available
+   *        fields are requested.
+   * @param available all the fields of the resource.
+   * @return a FieldSet instance. Never null.
+   * @throws IllegalArgumentException if fields has a name which is not in available.
+   */
+  public static FieldSet parse(String fields, FieldSet available) {
+    if (fields == null || fields.isEmpty()) {
+      return available;
+    }
+
+    Set<String> names = new LinkedHashSet<>();
+    for (String name: fields.split(",")) {
+      String trimmed = name.trim();
+      if (!available.contains(trimmed)) {
+        throw new IllegalArgumentException(
+                new StringBuilder()
+                  .append("Unknown field: ")
+                  .append(trimmed)
+                  .append(". Available fields are ")
+                  .append(String.join(",", available.names))
+                  .append(".")
+                  .toString()
+              );
+      }
+      names.add(trimmed);
+    }
+    return new FieldSet(names);
+  }
+
+  /**
+   * @param name a name of a field.
+   * @return true if this set has the field; false otherwise.
+   */
+  public boolean contains(String name) {
+    return names.contains(name);
+  }
+
+  /**
+   * @return names of the fields. Never null.
+   */
+  public Set<String> getNames() {
+    return names;
+  }
+
+  @Override
+  public int hashCode() {
+    return names.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this) {
+      return true;
+    }
+    if (!(obj instanceof FieldSet)) {
+      return false;
+    }
+    return names.equals(((FieldSet) obj).names);
+  }
+
+  @Override
+  public String toString() {
+    return String.join(",", names);
+  }
+
+}
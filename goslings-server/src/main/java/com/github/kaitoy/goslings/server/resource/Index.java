@@ -8,6 +8,8 @@
 
 package com.github.kaitoy.goslings.server.resource;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 /**
  * Index.
  *
@@ -40,6 +42,12 @@ public final class Index {
    */
   public static final class IndexEntry {
 
+    /**
+     * All the fields of this resource.
+     */
+    public static final FieldSet FIELDS = FieldSet.of("id", "path", "mode", "stage");
+
+    private final FieldSet fields;
     private final String id;
     private final String path;
     private final String mode;
@@ -52,12 +60,35 @@ public final class Index {
      * @param stage stage
      */
     public IndexEntry(String id, String path, String mode, int stage) {
+      this(FIELDS, id, path, mode, stage);
+    }
+
+    /**
+     * @param fields the fields which have values. The others must be null or 0.
+     * @param id object id
+     * @param path path to a file
+     * @param mode file mode
+     * @param stage stage
+     */
+    public IndexEntry(FieldSet fields, String id, String path, String mode, int stage) {
+      if (fields == null) {
+        throw new NullPointerException("fields is null.");
+      }
+      this.fields = fields;
       this.id = id;
       this.path = path;
       this.mode = mode;
       this.stage = stage;
     }
 
+    /**
+     * @return the fields which have values. Never null.
+     */
+    @JsonIgnore
+    public FieldSet getFields() {
+      return fields;
+    }
+
     /**
      * @return id
      */
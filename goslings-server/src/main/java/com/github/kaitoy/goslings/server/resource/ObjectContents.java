@@ -0,0 +1,62 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.resource;
+
+/**
+ * Contents of a Git object in a batch.
+ *
+ * @author Kaito Yamada
+ */
+public final class ObjectContents {
+
+  private final String id;
+  private final String contents;
+  private final boolean omitted;
+
+  /**
+   * @param id id
+   * @param contents contents. Null if omitted.
+   * @param omitted whether the contents is omitted because it exceeds the byte budget of
+   *        the batch.
+   */
+  public ObjectContents(String id, String contents, boolean omitted) {
+    if (id == null) {
+      throw new NullPointerException("id is null.");
+    }
+    if (contents == null && !omitted) {
+      throw new NullPointerException("contents is null.");
+    }
+    this.id = id;
+    this.contents = contents;
+    this.omitted = omitted;
+  }
+
+  /**
+   * @return id. Never null.
+   */
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * @return contents. Null if omitted.
+   */
+  public String getContents() {
+    return contents;
+  }
+
+  /**
+   * @return whether the contents is omitted because it exceeds the byte budget of the batch.
+   *         The contents can be got by another request.
+   */
+  public boolean isOmitted() {
+    return omitted;
+  }
+
+}
@@ -0,0 +1,314 @@
+/*
+ * Goslings - Git Repository Visualizer
+ * https://github.com/kaitoy/goslings
+ * MIT licensed
+ *
+ * Copyright (C) 2016 Kaito Yamada
+ */
+
+package com.github.kaitoy.goslings.server.resource;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * A Jackson module which has hand-written serializers of the resources which appear in large
+ * responses.
+ * The serializers write fields straight to the {@link JsonGenerator} in the same form as
+ * Jackson's reflective bean serialization, but without looking up property writers and
+ * value serializers for each value, and with field names which are quoted and encoded only once.
+ * Fields which are not in the {@link FieldSet} of a resource are omitted.
+ * Spring Boot registers this module to its auto-configured ObjectMapper.
+ *
+ * @author Kaito Yamada
+ */
+@Component
+public final class ResourceModule extends SimpleModule {
+
+  /**
+   *
+   */
+  private static final long serialVersionUID = 2367717437935452170L;
+
+  private static final SerializableString ID = new SerializedString("id");
+  private static final SerializableString PARENT_IDS = new SerializedString("parentIds");
+  private static final SerializableString TREE_ID = new SerializedString("treeId");
+  private static final SerializableString TREES = new SerializedString("trees");
+  private static final SerializableString BLOBS = new SerializedString("blobs");
+  private static final SerializableString PATH = new SerializedString("path");
+  private static final SerializableString MODE = new SerializedString("mode");
+  private static final SerializableString TYPE = new SerializedString("type");
+  private static final SerializableString STAGE = new SerializedString("stage");
+  private static final SerializableString NAME = new SerializedString("name");
+  private static final SerializableString REFERENT_ID = new SerializedString("referentId");
+  private static final SerializableString TAG_OBJECT_ID = new SerializedString("tagObjectId");
+  private static final SerializableString TEXT = new SerializedString("text");
+  private static final SerializableString HEAD_ID = new SerializedString("headId");
+  private static final SerializableString TAIL_ID = new SerializedString("tailId");
+  private static final SerializableString LENGTH = new SerializedString("length");
+
+  /**
+   * Constructor
+   */
+  public ResourceModule() {
+    super(ResourceModule.class.getSimpleName());
+    addSerializer(Commit.class, new CommitSerializer());
+    addSerializer(CommitChain.class, new CommitChainSerializer());
+    addSerializer(Tree.class, new TreeSerializer());
+    addSerializer(Tree.TreeEntry.class, new TreeEntrySerializer());
+    addSerializer(Index.IndexEntry.class, new IndexEntrySerializer());
+    addSerializer(Branch.class, new BranchSerializer());
+    addSerializer(Tag.class, new TagSerializer());
+    addSerializer(StringWrapper.class, new StringWrapperSerializer());
+  }
+
+  private static void writeMap(
+    JsonGenerator gen, SerializableString fieldName, Map<String, String> map
+  ) throws IOException {
+    gen.writeFieldName(fieldName);
+    gen.writeStartObject();
+    for (Map.Entry<String, String> entry: map.entrySet()) {
+      gen.writeFieldName(entry.getKey());
+      gen.writeString(entry.getValue());
+    }
+    gen.writeEndObject();
+  }
+
+  private static final class CommitSerializer extends StdSerializer<Commit> {
+
+    private static final long serialVersionUID = -5287318716462012766L;
+
+    private CommitSerializer() {
+      super(Commit.class);
+    }
+
+    @Override
+    public void serialize(
+      Commit value, JsonGenerator gen, SerializerProvider provider
+    ) throws IOException {
+      gen.writeStartObject();
+      if (value.getFields().contains(ID.getValue())) {
+        gen.writeFieldName(ID);
+        gen.writeString(value.getId());
+      }
+      if (value.getFields().contains(PARENT_IDS.getValue())) {
+        gen.writeFieldName(PARENT_IDS);
+        gen.writeStartArray();
+        for (String parentId: value.getParentIds()) {
+          gen.writeString(parentId);
+        }
+        gen.writeEndArray();
+      }
+      if (value.getFields().contains(TREE_ID.getValue())) {
+        gen.writeFieldName(TREE_ID);
+        gen.writeString(value.getTreeId());
+      }
+      gen.writeEndObject();
+    }
+
+  }
+
+  private static final class CommitChainSerializer extends StdSerializer<CommitChain> {
+
+    private static final long serialVersionUID = 3902847561038571209L;
+
+    private CommitChainSerializer() {
+      super(CommitChain.class);
+    }
+
+    @Override
+    public void serialize(
+      CommitChain value, JsonGenerator gen, SerializerProvider provider
+    ) throws IOException {
+      gen.writeStartObject();
+      gen.writeFieldName(HEAD_ID);
+      gen.writeString(value.getHeadId());
+      gen.writeFieldName(TAIL_ID);
+      gen.writeString(value.getTailId());
+      gen.writeFieldName(LENGTH);
+      gen.writeNumber(value.getLength());
+      gen.writeFieldName(PARENT_IDS);
+      gen.writeStartArray();
+      for (String parentId: value.getParentIds()) {
+        gen.writeString(parentId);
+      }
+      gen.writeEndArray();
+      gen.writeEndObject();
+    }
+
+  }
+
+  private static final class TreeSerializer extends StdSerializer<Tree> {
+
+    private static final long serialVersionUID = 8105927410432390719L;
+
+    private TreeSerializer() {
+      super(Tree.class);
+    }
+
+    @Override
+    public void serialize(
+      Tree value, JsonGenerator gen, SerializerProvider provider
+    ) throws IOException {
+      gen.writeStartObject();
+      if (value.getFields().contains(ID.getValue())) {
+        gen.writeFieldName(ID);
+        gen.writeString(value.getId());
+      }
+      if (value.getFields().contains(TREES.getValue())) {
+        writeMap(gen, TREES, value.getTrees());
+      }
+      if (value.getFields().contains(BLOBS.getValue())) {
+        writeMap(gen, BLOBS, value.getBlobs());
+      }
+      gen.writeEndObject();
+    }
+
+  }
+
+  private static final class TreeEntrySerializer extends StdSerializer<Tree.TreeEntry> {
+
+    private static final long serialVersionUID = -3016547702837153540L;
+
+    private TreeEntrySerializer() {
+      super(Tree.TreeEntry.class);
+    }
+
+    @Override
+    public void serialize(
+      Tree.TreeEntry value, JsonGenerator gen, SerializerProvider provider
+    ) throws IOException {
+      gen.writeStartObject();
+      gen.writeFieldName(ID);
+      gen.writeString(value.getId());
+      gen.writeFieldName(PATH);
+      gen.writeString(value.getPath());
+      gen.writeFieldName(MODE);
+      gen.writeString(value.getMode());
+      gen.writeFieldName(TYPE);
+      gen.writeString(value.getType());
+      gen.writeEndObject();
+    }
+
+  }
+
+  private static final class IndexEntrySerializer extends StdSerializer<Index.IndexEntry> {
+
+    private static final long serialVersionUID = 4470351546931618235L;
+
+    private IndexEntrySerializer() {
+      super(Index.IndexEntry.class);
+    }
+
+    @Override
+    public void serialize(
+      Index.IndexEntry value, JsonGenerator gen, SerializerProvider provider
+    ) throws IOException {
+      gen.writeStartObject();
+      if (value.getFields().contains(ID.getValue())) {
+        gen.writeFieldName(ID);
+        gen.writeString(value.getId());
+      }
+      if (value.getFields().contains(PATH.getValue())) {
+        gen.writeFieldName(PATH);
+        gen.writeString(value.getPath());
+      }
+      if (value.getFields().contains(MODE.getValue())) {
+        gen.writeFieldName(MODE);
+        gen.writeString(value.getMode());
+      }
+      if (value.getFields().contains(STAGE.getValue())) {
+        gen.writeFieldName(STAGE);
+        gen.writeNumber(value.getStage());
+      }
+      gen.writeEndObject();
+    }
+
+  }
+
+  private static final class BranchSerializer extends StdSerializer<Branch> {
+
+    private static final long serialVersionUID = 1597036541372928146L;
+
+    private BranchSerializer() {
+      super(Branch.class);
+    }
+
+    @Override
+    public void serialize(
+      Branch value, JsonGenerator gen, SerializerProvider provider
+    ) throws IOException {
+      gen.writeStartObject();
+      if (value.getFields().contains(NAME.getValue())) {
+        gen.writeFieldName(NAME);
+        gen.writeString(value.getName());
+      }
+      if (value.getFields().contains(REFERENT_ID.getValue())) {
+        gen.writeFieldName(REFERENT_ID);
+        gen.writeString(value.getReferentId());
+      }
+      gen.writeEndObject();
+    }
+
+  }
+
+  private static final class TagSerializer extends StdSerializer<Tag> {
+
+    private static final long serialVersionUID = -7806129384212306571L;
+
+    private TagSerializer() {
+      super(Tag.class);
+    }
+
+    @Override
+    public void serialize(
+      Tag value, JsonGenerator gen, SerializerProvider provider
+    ) throws IOException {
+      gen.writeStartObject();
+      if (value.getFields().contains(NAME.getValue())) {
+        gen.writeFieldName(NAME);
+        gen.writeString(value.getName());
+      }
+      if (value.getFields().contains(TAG_OBJECT_ID.getValue())) {
+        gen.writeFieldName(TAG_OBJECT_ID);
+        gen.writeString(value.getTagObjectId());
+      }
+      if (value.getFields().contains(REFERENT_ID.getValue())) {
+        gen.writeFieldName(REFERENT_ID);
+        gen.writeString(value.getReferentId());
+      }
+      gen.writeEndObject();
+    }
+
+  }
+
+  private static final class StringWrapperSerializer extends StdSerializer<StringWrapper> {
+
+    private static final long serialVersionUID = 6251460385826317294L;
+
+    private StringWrapperSerializer() {
+      super(StringWrapper.class);
+    }
+
+    @Override
+    public void serialize(
+      StringWrapper value, JsonGenerator gen, SerializerProvider provider
+    ) throws IOException {
+      gen.writeStartObject();
+      gen.writeFieldName(TEXT);
+      gen.writeString(value.getText());
+      gen.writeEndObject();
+    }
+
+  }
+
+}
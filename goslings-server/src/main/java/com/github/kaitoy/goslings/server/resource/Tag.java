@@ -8,6 +8,8 @@
 
 package com.github.kaitoy.goslings.server.resource;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 /**
  * Annotated/Lightweight Tag
  *
@@ -15,6 +17,12 @@ package com.github.kaitoy.goslings.server.resource;
  */
 public final class Tag {
 
+  /**
+   * All the fields of this resource.
+   */
+  public static final FieldSet FIELDS = FieldSet.of("name", "tagObjectId", "referentId");
+
+  private final FieldSet fields;
   private final String name;
   private final String tagObjectId;
   private final String referentId;
@@ -25,33 +33,55 @@ public final class Tag {
    * @param referentId referentId
    */
   public Tag(String name, String tagObjectId, String referentId) {
-    if (name == null) {
+    this(FIELDS, name, tagObjectId, referentId);
+  }
+
+  /**
+   * @param fields the fields which have values. The others must be null.
+   * @param name name
+   * @param tagObjectId tagObjectId
+   * @param referentId referentId
+   */
+  public Tag(FieldSet fields, String name, String tagObjectId, String referentId) {
+    if (fields == null) {
+      throw new NullPointerException("fields is null.");
+    }
+    if (fields.contains("name") && name == null) {
       throw new NullPointerException("name is null.");
     }
-    if (referentId == null) {
+    if (fields.contains("referentId") && referentId == null) {
       throw new NullPointerException("referentId is null.");
     }
+    this.fields = fields;
     this.name = name;
     this.tagObjectId = tagObjectId;
     this.referentId = referentId;
   }
 
   /**
-   * @return name. Never null.
+   * @return the fields which have values. Never null.
+   */
+  @JsonIgnore
+  public FieldSet getFields() {
+    return fields;
+  }
+
+  /**
+   * @return name. Null if not in the fields.
    */
   public String getName() {
     return name;
   }
 
   /**
-   * @return tagObjectId. Maybe null.
+   * @return tagObjectId. Null if the tag is lightweight or not in the fields.
    */
   public String getTagObjectId() {
     return tagObjectId;
   }
 
   /**
-   * @return referentId. Never null.
+   * @return referentId. Null if not in the fields.
    */
   public String getReferentId() {
     return referentId;
@@ -10,6 +10,8 @@ package com.github.kaitoy.goslings.server.resource;
 
 import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 /**
  * Tree object.
  *
@@ -17,6 +19,12 @@ import java.util.Map;
  */
 public final class Tree {
 
+  /**
+   * All the fields of this resource.
+   */
+  public static final FieldSet FIELDS = FieldSet.of("id", "trees", "blobs");
+
+  private final FieldSet fields;
   private final String id;
   private final Map<String, String> trees;
   private final Map<String, String> blobs;
@@ -27,39 +35,117 @@ public final class Tree {
    * @param blobs blobs
    */
   public Tree(String id, Map<String, String> trees, Map<String, String> blobs) {
-    if (id == null) {
+    this(FIELDS, id, trees, blobs);
+  }
+
+  /**
+   * @param fields the fields which have values. The others must be null.
+   * @param id id
+   * @param trees trees
+   * @param blobs blobs
+   */
+  public Tree(
+    FieldSet fields, String id, Map<String, String> trees, Map<String, String> blobs
+  ) {
+    if (fields == null) {
+      throw new NullPointerException("fields is null.");
+    }
+    if (fields.contains("id") && id == null) {
       throw new NullPointerException("id is null.");
     }
-    if (trees == null) {
+    if (fields.contains("trees") && trees == null) {
       throw new NullPointerException("trees is null.");
     }
-    if (blobs == null) {
+    if (fields.contains("blobs") && blobs == null) {
       throw new NullPointerException("blobs is null.");
     }
+    this.fields = fields;
     this.id = id;
     this.trees = trees;
     this.blobs = blobs;
   }
 
   /**
-   * @return id
+   * @return the fields which have values. Never null.
+   */
+  @JsonIgnore
+  public FieldSet getFields() {
+    return fields;
+  }
+
+  /**
+   * @return id. Null if not in the fields.
    */
   public String getId() {
     return id;
   }
 
   /**
-   * @return trees (mapping from object IDs to directory names). Never null.
+   * @return trees (mapping from object IDs to directory names). Null if not in the fields.
    */
   public Map<String, String> getTrees() {
     return trees;
   }
 
   /**
-   * @return blobs (mapping from object IDs file names). Never null.
+   * @return blobs (mapping from object IDs file names). Null if not in the fields.
    */
   public Map<String, String> getBlobs() {
     return blobs;
   }
 
+  /**
+   * Tree entry
+   * @author Kaito Yamada
+   */
+  public static final class TreeEntry {
+
+    private final String id;
+    private final String path;
+    private final String mode;
+    private final String type;
+
+    /**
+     * @param id object id
+     * @param path path to the entry from the tree
+     * @param mode file mode
+     * @param type object type (i.e. tree, blob, or commit)
+     */
+    public TreeEntry(String id, String path, String mode, String type) {
+      this.id = id;
+      this.path = path;
+      this.mode = mode;
+      this.type = type;
+    }
+
+    /**
+     * @return id
+     */
+    public String getId() {
+      return id;
+    }
+
+    /**
+     * @return path
+     */
+    public String getPath() {
+      return path;
+    }
+
+    /**
+     * @return mode
+     */
+    public String getMode() {
+      return mode;
+    }
+
+    /**
+     * @return type
+     */
+    public String getType() {
+      return type;
+    }
+
+  }
+
 }